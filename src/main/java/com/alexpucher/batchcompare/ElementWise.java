@@ -0,0 +1,31 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Marker interface for {@link Equalizer} and {@link Operator} implementations
+ * which act on each value or pair independently of the data set. Element-wise
+ * equalizers do not need setup, they neither act as {@link Barrier} nor
+ * prevent stage fusion. Element-wise operators compute their result from the
+ * given pair only and have no side effects, so optimizers may reorder them
+ * with filters.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface ElementWise {
+
+}
@@ -0,0 +1,43 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Processor that selects a subset of tuples. Only {@link #select(Collection)}
+ * guarantees that the input is neither modified nor reordered,
+ * {@link #execute(Collection)} may return the selected tuples in a different
+ * order, e.g. ranked by difference.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface Filter extends Processor {
+
+    /**
+     * Select tuples passing the filter without materializing the result.<br />
+     * NOTE: the input is not modified.
+     * 
+     * @param pairs
+     *            collection of base-candidate tuples
+     * @return selection vector, bit i is set if the i-th tuple in iteration
+     *         order passes the filter
+     */
+    public abstract BitSet select(Collection<Pair> pairs);
+
+}
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Extracts a key from a base or candidate object. Keys are used to group or
+ * order objects during pair generation. (i.e. operation name, message type or
+ * root element of a web-service message)
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface KeyExtractor {
+
+    /**
+     * Extract key from given object.<br />
+     * NOTE: keys must implement {@link Object#equals(Object)} and
+     * {@link Object#hashCode()} consistently.
+     * 
+     * @param object
+     *            base or candidate object
+     * @return key, or <code>null</code> if the object has no key
+     */
+    public abstract Object extractKey(Object object);
+
+}
@@ -0,0 +1,29 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Marker interface for {@link Filter} implementations which select tuples by
+ * base and candidate only and do not read the difference value. Key filters
+ * commute with operators and equalizers, so optimizers may move them ahead of
+ * expensive scoring steps.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface KeyFilter extends Filter {
+
+}
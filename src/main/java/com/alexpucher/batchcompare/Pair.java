@@ -18,7 +18,9 @@ package com.alexpucher.batchcompare;
 import java.util.UUID;
 
 /**
- * A single base-candidate pair with a difference value.
+ * A single base-candidate pair with a difference value.<br />
+ * NOTE: pairs are identified by their id. Two pairs are equal if and only if
+ * their ids are equal.
  * 
  * @author Alexander Pucher
  * 
@@ -40,7 +42,21 @@ public interface Pair extends Comparable<Pair> {
     public abstract Object getCandidate();
 
     /**
-     * Return tuple UUID.
+     * Return tuple id as generated by a {@link PairIdentity}.<br />
+     * NOTE: the default implementation folds the UUID into a single long
+     * value, so pairs implemented against the UUID-only interface keep
+     * working. Ids derived from UUIDs this way are not guaranteed to be
+     * unique, implementations should override this method.
+     * 
+     * @return tuple id
+     */
+    public default long getId() {
+        UUID uuid = getUUID();
+        return uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+    }
+
+    /**
+     * Return tuple UUID. Derived from the tuple id.
      * 
      * @return tuple uuid
      */
@@ -0,0 +1,42 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+import java.util.Collection;
+
+/**
+ * Generates candidate pairs from sets of bases and candidates. Implementations
+ * may enumerate a subset of the cross product only, based on knowledge about
+ * which pairs can possibly match.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface PairGenerator {
+
+    /**
+     * Generate pairs from given bases and candidates.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @return collection of base-candidate pairs
+     */
+    public abstract Collection<Pair> generate(Collection<?> bases,
+            Collection<?> candidates);
+
+}
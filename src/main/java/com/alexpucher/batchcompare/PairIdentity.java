@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Strategy generating cheap, unique identifiers for base-candidate pairs. The
+ * identifier determines pair equality and is carried along when a pair is
+ * copied.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface PairIdentity {
+
+    /**
+     * Return a new pair identifier.
+     * 
+     * @return pair identifier
+     */
+    public abstract long nextId();
+
+    /**
+     * Reserve a block of consecutive pair identifiers.
+     * 
+     * @param count
+     *            number of identifiers
+     * @return first identifier of the block
+     */
+    public abstract long nextIds(long count);
+
+}
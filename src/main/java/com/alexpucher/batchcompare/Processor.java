@@ -18,7 +18,10 @@ package com.alexpucher.batchcompare;
 import java.util.Collection;
 
 /**
- * Processes a collection of pairs.
+ * Processes a collection of pairs.<br />
+ * NOTE: the input may be a columnar
+ * {@link com.alexpucher.batchcompare.processor.PairBatch}. Implementations
+ * should preserve this representation where possible.
  * 
  * @author Alexander Pucher
  * 
@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Implemented by non-thread-safe {@link Operator} and {@link Processor}
+ * implementations which can provide independent instances for parallel
+ * execution.
+ * 
+ * @author Alexander Pucher
+ * 
+ * @param <T>
+ *            replica type
+ */
+public interface Replicable<T> {
+
+    /**
+     * Create an independent instance with equal configuration. The replica
+     * is used by a single thread only.
+     * 
+     * @return replica
+     */
+    public abstract T replicate();
+
+}
@@ -0,0 +1,30 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+/**
+ * Marker interface for {@link Operator} and {@link Processor} implementations
+ * which may be executed concurrently by multiple threads. Parallel execution
+ * engines share a single instance of thread-safe implementations, replicate
+ * {@link Replicable} ones and run any other implementation on a single thread
+ * only.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface ThreadSafe {
+
+}
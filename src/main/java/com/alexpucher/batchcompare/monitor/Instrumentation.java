@@ -0,0 +1,352 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Registry of {@link MetricsListener} instances receiving stage measurements.
+ * Tasks, batch operators and map operators report into the registered
+ * listeners.<br />
+ * Instrumentation is enabled while at least one listener is registered. When
+ * disabled, {@link #start(Object, long)} returns <code>null</code> after a
+ * single volatile read and stages skip all measurements.<br />
+ * Stages executed once per pair inside an enclosing stage, e.g. entry
+ * operators of a map operator, {@link #accumulate(Object, long, long, long)}
+ * their measurements on the executing thread. Accumulated measurements are
+ * reported as a single sample per stage when the next probe on that thread
+ * stops, typically the probe of the enclosing batch.<br />
+ * NOTE: allocated bytes are measured on the executing thread only and require
+ * a JVM supporting {@link com.sun.management.ThreadMXBean}. Allocations of
+ * nested stages and helper threads are not attributed separately.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class Instrumentation {
+
+    private static final MetricsListener[] NONE = new MetricsListener[0];
+    private static final Object lock = new Object();
+
+    private static volatile MetricsListener[] listeners = NONE;
+    private static final ThreadLocal<Accumulation> accumulations = new ThreadLocal<Accumulation>();
+
+    private Instrumentation() {
+    }
+
+    /**
+     * Register listener. Enables instrumentation.
+     * 
+     * @param listener
+     *            listener
+     */
+    public static void addListener(MetricsListener listener) {
+        synchronized (lock) {
+            MetricsListener[] updated = Arrays.copyOf(listeners,
+                    listeners.length + 1);
+            updated[listeners.length] = listener;
+            listeners = updated;
+        }
+    }
+
+    /**
+     * Unregister listener. Disables instrumentation if no listener is left.
+     * 
+     * @param listener
+     *            listener
+     */
+    public static void removeListener(MetricsListener listener) {
+        synchronized (lock) {
+            MetricsListener[] current = listeners;
+
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == listener) {
+                    MetricsListener[] updated = new MetricsListener[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i,
+                            current.length - i - 1);
+                    listeners = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Test whether at least one listener is registered.
+     * 
+     * @return <code>true</code> if stages are measured
+     */
+    public static boolean isEnabled() {
+        return listeners.length != 0;
+    }
+
+    /**
+     * Start measuring a stage execution.
+     * 
+     * @param stage
+     *            measured stage
+     * @param pairsIn
+     *            number of input pairs
+     * @return running measurement, <code>null</code> if disabled
+     */
+    public static Probe start(Object stage, long pairsIn) {
+        MetricsListener[] current = listeners;
+
+        if (current.length == 0) {
+            return null;
+        }
+
+        return new Probe(current, stage, pairsIn, false);
+    }
+
+    /**
+     * Start measuring a stage executed as part of an enclosing stage, e.g. an
+     * operator of a fused processor. Wall time is the sum of the latencies
+     * recorded by {@link Probe#pair(long)}, input pairs are the recorded pairs
+     * and allocations are not measured.
+     * 
+     * @param stage
+     *            measured stage
+     * @return running measurement, <code>null</code> if disabled
+     */
+    public static Probe startNested(Object stage) {
+        MetricsListener[] current = listeners;
+
+        if (current.length == 0) {
+            return null;
+        }
+
+        return new Probe(current, stage, 0L, true);
+    }
+
+    /**
+     * Accumulate a measurement on the calling thread. The accumulated
+     * measurements of a stage are reported as a single sample once the next
+     * probe on the calling thread stops.<br />
+     * NOTE: neither allocates nor reports per call, suitable for stages
+     * executed once per pair.
+     * 
+     * @param stage
+     *            measured stage
+     * @param pairsIn
+     *            number of input pairs
+     * @param pairsOut
+     *            number of output pairs
+     * @param nanos
+     *            wall time in nanoseconds
+     */
+    public static void accumulate(Object stage, long pairsIn, long pairsOut,
+            long nanos) {
+        if (listeners.length == 0) {
+            return;
+        }
+
+        Accumulation accumulation = accumulations.get();
+
+        if (accumulation == null) {
+            accumulation = new Accumulation();
+            accumulations.set(accumulation);
+        }
+
+        accumulation.add(stage, pairsIn, pairsOut, nanos);
+    }
+
+    /**
+     * Return bytes allocated by the calling thread so far.
+     * 
+     * @return allocated bytes, -1 if not supported
+     */
+    static long allocatedBytes() {
+        return Allocation.allocatedBytes();
+    }
+
+    /**
+     * Running measurement of a single stage execution.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    public static final class Probe {
+        private final MetricsListener[] listeners;
+        private final Object stage;
+        private final long pairsIn;
+        private final boolean nested;
+        private final long startBytes;
+        private final long startNanos;
+        private LatencyHistogram latencies;
+        private long pairs;
+        private long pairNanos;
+
+        private Probe(MetricsListener[] listeners, Object stage, long pairsIn,
+                boolean nested) {
+            this.listeners = listeners;
+            this.stage = stage;
+            this.pairsIn = pairsIn;
+            this.nested = nested;
+            this.startBytes = nested ? -1L : allocatedBytes();
+            this.startNanos = nested ? 0L : System.nanoTime();
+        }
+
+        /**
+         * Record latency of a single pair.
+         * 
+         * @param startNanos
+         *            {@link System#nanoTime()} before processing the pair
+         */
+        public void pair(long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+
+            if (this.latencies == null) {
+                this.latencies = new LatencyHistogram();
+            }
+
+            this.latencies.record(nanos);
+            this.pairs++;
+            this.pairNanos += nanos;
+        }
+
+        /**
+         * Return number of pairs recorded so far.
+         * 
+         * @return recorded pairs
+         */
+        public long getPairs() {
+            return this.pairs;
+        }
+
+        /**
+         * Complete measurement and report it to the listeners registered at
+         * start, followed by the measurements accumulated on the calling
+         * thread.
+         * 
+         * @param pairsOut
+         *            number of output pairs
+         */
+        public void stop(long pairsOut) {
+            StageSample sample;
+
+            if (this.nested) {
+                sample = new StageSample(this.stage, this.pairNanos,
+                        this.pairs, pairsOut, -1L, this.latencies);
+            } else {
+                long nanos = System.nanoTime() - this.startNanos;
+                long bytes = allocatedBytes();
+                sample = new StageSample(this.stage, nanos, this.pairsIn,
+                        pairsOut, (bytes < 0 || this.startBytes < 0) ? -1L
+                                : bytes - this.startBytes, this.latencies);
+            }
+
+            for (MetricsListener listener : this.listeners) {
+                listener.record(sample);
+            }
+
+            Accumulation accumulation = accumulations.get();
+
+            if (accumulation != null) {
+                accumulation.flush(this.listeners);
+            }
+        }
+    }
+
+    /**
+     * Measurements accumulated per stage on a single thread.
+     */
+    private static class Accumulation {
+        private Object[] stages = new Object[4];
+        private long[] pairsIn = new long[4];
+        private long[] pairsOut = new long[4];
+        private long[] nanos = new long[4];
+        private int size;
+
+        private void add(Object stage, long in, long out, long time) {
+            int index = 0;
+
+            while (index < this.size && this.stages[index] != stage) {
+                index++;
+            }
+
+            if (index == this.size) {
+                if (this.size == this.stages.length) {
+                    int capacity = this.size * 2;
+                    this.stages = Arrays.copyOf(this.stages, capacity);
+                    this.pairsIn = Arrays.copyOf(this.pairsIn, capacity);
+                    this.pairsOut = Arrays.copyOf(this.pairsOut, capacity);
+                    this.nanos = Arrays.copyOf(this.nanos, capacity);
+                }
+                this.stages[index] = stage;
+                this.size++;
+            }
+
+            this.pairsIn[index] += in;
+            this.pairsOut[index] += out;
+            this.nanos[index] += time;
+        }
+
+        private void flush(MetricsListener[] listeners) {
+            for (int i = 0; i < this.size; i++) {
+                StageSample sample = new StageSample(this.stages[i],
+                        this.nanos[i], this.pairsIn[i], this.pairsOut[i], -1L,
+                        null);
+
+                for (MetricsListener listener : listeners) {
+                    listener.record(sample);
+                }
+
+                this.stages[i] = null;
+                this.pairsIn[i] = 0L;
+                this.pairsOut[i] = 0L;
+                this.nanos[i] = 0L;
+            }
+
+            this.size = 0;
+        }
+    }
+
+    /**
+     * Lazy access to per-thread allocation counters.
+     */
+    private static class Allocation {
+        private static final com.sun.management.ThreadMXBean BEAN = bean();
+
+        private static com.sun.management.ThreadMXBean bean() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory
+                        .getThreadMXBean();
+
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+                    if (threads.isThreadAllocatedMemorySupported()
+                            && threads.isThreadAllocatedMemoryEnabled()) {
+                        return threads;
+                    }
+                }
+            } catch (LinkageError e) {
+                // NOTE: platform management not available
+            }
+
+            return null;
+        }
+
+        private static long allocatedBytes() {
+            return (BEAN == null) ? -1L : BEAN.getThreadAllocatedBytes(Thread
+                    .currentThread().getId());
+        }
+    }
+
+}
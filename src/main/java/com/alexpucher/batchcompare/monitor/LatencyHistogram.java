@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+/**
+ * Histogram of latencies in nanoseconds with logarithmic buckets. Bucket i
+ * holds values in [2^i, 2^(i+1)), bucket 0 also holds zero. Percentiles are
+ * reported as the upper bound of their bucket.<br />
+ * NOTE: the histogram is not thread-safe.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Create empty {@link LatencyHistogram} instance.
+     */
+    public LatencyHistogram() {
+        super();
+    }
+
+    /**
+     * Record a single latency. Negative values are recorded as zero.
+     * 
+     * @param nanos
+     *            latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0L);
+        this.counts[bucket(value)]++;
+        this.count++;
+        this.total += value;
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Add all latencies recorded by another histogram.
+     * 
+     * @param other
+     *            histogram
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts[i] += other.counts[i];
+        }
+
+        this.count += other.count;
+        this.total += other.total;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Return upper bound of the latency below which the given fraction of
+     * recorded latencies falls.
+     * 
+     * @param fraction
+     *            fraction in [0, 1]
+     * @return latency in nanoseconds, 0 if empty
+     */
+    public long getPercentile(double fraction) {
+        if (this.count == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(fraction * this.count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts[i];
+
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.max);
+            }
+        }
+
+        return this.max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Return mean latency.
+     * 
+     * @return latency in nanoseconds, 0 if empty
+     */
+    public double getMean() {
+        return (this.count == 0) ? 0.0d : (double) this.total / this.count;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + this.count + " p50=" + getPercentile(0.5d)
+                + "ns p90=" + getPercentile(0.9d) + "ns p99="
+                + getPercentile(0.99d) + "ns max=" + this.max + "ns";
+    }
+
+    private static int bucket(long value) {
+        return (value == 0L) ? 0 : 63 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long upperBound(int bucket) {
+        return (bucket >= 62) ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1L;
+    }
+
+}
@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+/**
+ * Receives measurements of stage executions, see {@link Instrumentation}.<br />
+ * NOTE: listeners are called synchronously by the executing thread, possibly
+ * by multiple threads concurrently.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public interface MetricsListener {
+
+    /**
+     * Record measurement of a single stage execution.
+     * 
+     * @param sample
+     *            stage measurement
+     */
+    public abstract void record(StageSample sample);
+
+}
@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.alexpucher.batchcompare.task.ProcessorTask;
+
+/**
+ * Listener accumulating measurements per stage instance. Register with
+ * {@link Instrumentation#addListener(MetricsListener)} to start recording.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class MetricsRegistry implements MetricsListener {
+
+    private final Map<Object, StageStatistics> stages = new IdentityHashMap<Object, StageStatistics>();
+
+    /**
+     * Create empty {@link MetricsRegistry} instance.
+     */
+    public MetricsRegistry() {
+        super();
+    }
+
+    @Override
+    public synchronized void record(StageSample sample) {
+        StageStatistics statistics = this.stages.get(sample.getStage());
+
+        if (statistics == null) {
+            statistics = new StageStatistics(sample.getStage());
+            this.stages.put(sample.getStage(), statistics);
+        }
+
+        statistics.add(sample);
+    }
+
+    /**
+     * Return snapshot of the statistics of a stage.
+     * 
+     * @param stage
+     *            measured stage
+     * @return statistics copy, <code>null</code> if never measured
+     */
+    public synchronized StageStatistics getStatistics(Object stage) {
+        StageStatistics statistics = this.stages.get(stage);
+        return (statistics == null) ? null : statistics.copy();
+    }
+
+    /**
+     * Return snapshots of all stage statistics ordered by descending total
+     * time.
+     * 
+     * @return statistics copies
+     */
+    public synchronized List<StageStatistics> getStages() {
+        List<StageStatistics> stages = new ArrayList<StageStatistics>(
+                this.stages.size());
+
+        for (StageStatistics statistics : this.stages.values()) {
+            stages.add(statistics.copy());
+        }
+
+        Collections.sort(stages, new Comparator<StageStatistics>() {
+            @Override
+            public int compare(StageStatistics o1, StageStatistics o2) {
+                return Long.compare(o2.getNanos(), o1.getNanos());
+            }
+        });
+
+        return stages;
+    }
+
+    /**
+     * Discard all statistics.
+     */
+    public synchronized void reset() {
+        this.stages.clear();
+    }
+
+    /**
+     * Print statistics of all stages as plain-text table ordered by
+     * descending total time.
+     * 
+     * @return table text, one stage per line
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ENGLISH,
+                "%-48s %8s %12s %10s %10s %8s %12s %s%n", "stage", "runs",
+                "time[ms]", "pairs in", "pairs out", "select", "alloc[KB]",
+                "latency/pair"));
+
+        for (StageStatistics statistics : getStages()) {
+            builder.append(String.format(Locale.ENGLISH,
+                    "%-48s %8d %12.3f %10d %10d %8.3f %12d %s%n",
+                    name(statistics.getStage()), statistics.getExecutions(),
+                    statistics.getNanos() / 1000000.0d,
+                    statistics.getPairsIn(), statistics.getPairsOut(),
+                    statistics.getSelectivity(),
+                    statistics.getAllocatedBytes() / 1024,
+                    statistics.getLatencies().getCount() == 0 ? "-"
+                            : statistics.getLatencies().toString()));
+        }
+
+        return builder.toString();
+    }
+
+    private static String name(Object stage) {
+        String name = simpleName(stage);
+
+        if (stage instanceof ProcessorTask) {
+            name += "[" + simpleName(((ProcessorTask) stage).getProcessor())
+                    + "]";
+        }
+
+        return name + "@" + Integer.toHexString(System.identityHashCode(stage));
+    }
+
+    private static String simpleName(Object object) {
+        if (object == null) {
+            return "<none>";
+        }
+
+        String name = object.getClass().getSimpleName();
+        return name.isEmpty() ? object.getClass().getName() : name;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+/**
+ * Measurement of a single stage execution. Stages are {@link
+ * com.alexpucher.batchcompare.task.Task}, {@link
+ * com.alexpucher.batchcompare.Processor} or {@link
+ * com.alexpucher.batchcompare.Operator} instances.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class StageSample {
+
+    private final Object stage;
+    private final long nanos;
+    private final long pairsIn;
+    private final long pairsOut;
+    private final long allocatedBytes;
+    private final LatencyHistogram latencies;
+
+    /**
+     * Create {@link StageSample} instance with given measurements.
+     * 
+     * @param stage
+     *            measured stage
+     * @param nanos
+     *            wall time in nanoseconds
+     * @param pairsIn
+     *            number of input pairs
+     * @param pairsOut
+     *            number of output pairs
+     * @param allocatedBytes
+     *            bytes allocated by the executing thread, -1 if unknown
+     * @param latencies
+     *            per-pair latencies, may be <code>null</code>
+     */
+    public StageSample(Object stage, long nanos, long pairsIn, long pairsOut,
+            long allocatedBytes, LatencyHistogram latencies) {
+        super();
+        this.stage = stage;
+        this.nanos = nanos;
+        this.pairsIn = pairsIn;
+        this.pairsOut = pairsOut;
+        this.allocatedBytes = allocatedBytes;
+        this.latencies = latencies;
+    }
+
+    public Object getStage() {
+        return stage;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getPairsIn() {
+        return pairsIn;
+    }
+
+    public long getPairsOut() {
+        return pairsOut;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Return ratio of output to input pairs.
+     * 
+     * @return selectivity, 1 if there is no input
+     */
+    public double getSelectivity() {
+        return (this.pairsIn == 0) ? 1.0d : (double) this.pairsOut
+                / this.pairsIn;
+    }
+
+}
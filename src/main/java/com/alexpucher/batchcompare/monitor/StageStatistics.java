@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.monitor;
+
+/**
+ * Accumulated measurements of all executions of a stage.<br />
+ * NOTE: instances are updated by {@link MetricsRegistry} under its lock, use
+ * {@link MetricsRegistry#getStatistics(Object)} for consistent snapshots.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class StageStatistics {
+
+    private final Object stage;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long executions;
+    private long nanos;
+    private long pairsIn;
+    private long pairsOut;
+    private long allocatedBytes;
+
+    /**
+     * Create empty {@link StageStatistics} instance for given stage.
+     * 
+     * @param stage
+     *            measured stage
+     */
+    public StageStatistics(Object stage) {
+        super();
+        this.stage = stage;
+    }
+
+    /**
+     * Add a single stage execution. Unknown allocations are ignored.
+     * 
+     * @param sample
+     *            stage measurement
+     */
+    public void add(StageSample sample) {
+        this.executions++;
+        this.nanos += sample.getNanos();
+        this.pairsIn += sample.getPairsIn();
+        this.pairsOut += sample.getPairsOut();
+
+        if (sample.getAllocatedBytes() > 0) {
+            this.allocatedBytes += sample.getAllocatedBytes();
+        }
+        if (sample.getLatencies() != null) {
+            this.latencies.merge(sample.getLatencies());
+        }
+    }
+
+    /**
+     * Create a copy of the statistics.
+     * 
+     * @return independent copy
+     */
+    public StageStatistics copy() {
+        StageStatistics copy = new StageStatistics(this.stage);
+        copy.latencies.merge(this.latencies);
+        copy.executions = this.executions;
+        copy.nanos = this.nanos;
+        copy.pairsIn = this.pairsIn;
+        copy.pairsOut = this.pairsOut;
+        copy.allocatedBytes = this.allocatedBytes;
+        return copy;
+    }
+
+    public Object getStage() {
+        return stage;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getPairsIn() {
+        return pairsIn;
+    }
+
+    public long getPairsOut() {
+        return pairsOut;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Return ratio of output to input pairs over all executions.
+     * 
+     * @return selectivity, 1 if there was no input
+     */
+    public double getSelectivity() {
+        return (this.pairsIn == 0) ? 1.0d : (double) this.pairsOut
+                / this.pairsIn;
+    }
+
+}
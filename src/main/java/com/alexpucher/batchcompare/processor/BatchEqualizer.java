@@ -17,6 +17,7 @@ package com.alexpucher.batchcompare.processor;
 
 import java.util.Collection;
 
+import com.alexpucher.batchcompare.ElementWise;
 import com.alexpucher.batchcompare.Equalizer;
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
@@ -24,7 +25,10 @@ import com.alexpucher.batchcompare.Processor;
 /**
  * Executes score equalizer functions on collections of pairs. Typically used to
  * normalize Operator results. (i.e. in aggregation tasks)<br />
- * NOTE: This class acts as Processor wrapper for Equalizers
+ * NOTE: This class acts as Processor wrapper for Equalizers<br />
+ * NOTE: {@link ElementWise} equalizers are not set up. Otherwise the equalizer
+ * is set up on the complete input, so the processor acts as a barrier, see
+ * {@link com.alexpucher.batchcompare.task.TaskUtils#isBarrier(Processor)}.
  * 
  * @author Alexander Pucher
  * 
@@ -46,14 +50,20 @@ public class BatchEqualizer implements Processor {
 
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
-        int[] values = new int[pairs.size()];
-        int counter = 0;
-
-        for (Pair pair : pairs) {
-            values[counter++] = pair.getDifference();
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
         }
 
-        this.equalizer.setup(values);
+        if (!(this.equalizer instanceof ElementWise)) {
+            int[] values = new int[pairs.size()];
+            int counter = 0;
+
+            for (Pair pair : pairs) {
+                values[counter++] = pair.getDifference();
+            }
+
+            this.equalizer.setup(values);
+        }
 
         for (Pair pair : pairs) {
             pair.setDifference(this.equalizer.equalize(pair.getDifference()));
@@ -62,6 +72,26 @@ public class BatchEqualizer implements Processor {
         return pairs;
     }
 
+    /**
+     * Equalize the difference values of the batch in place.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return updated batch
+     */
+    public PairBatch execute(PairBatch batch) {
+        if (!(this.equalizer instanceof ElementWise)) {
+            this.equalizer.setup(batch.getDifferences());
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setDifference(i, this.equalizer.equalize(batch
+                    .getDifference(i)));
+        }
+
+        return batch;
+    }
+
     public Equalizer getEqualizer() {
         return equalizer;
     }
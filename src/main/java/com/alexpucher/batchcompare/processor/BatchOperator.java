@@ -21,11 +21,16 @@ import java.util.Collection;
 import com.alexpucher.batchcompare.Operator;
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.monitor.Instrumentation;
+import com.alexpucher.batchcompare.monitor.Instrumentation.Probe;
 
 /**
  * Runs a binary Operator on collections of pairs and generates quantitative
  * results.<br />
- * NOTE: This class acts as Processor wrapper for Operators.
+ * NOTE: This class acts as Processor wrapper for Operators.<br />
+ * NOTE: {@link PairBatch} input is updated in place.<br />
+ * NOTE: executions and per-pair latencies are reported to
+ * {@link Instrumentation} per operator if enabled.
  * 
  * @author Alexander Pucher
  * 
@@ -51,16 +56,57 @@ public class BatchOperator implements Processor {
      */
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
 
         Collection<Pair> results = new ArrayList<Pair>(pairs.size());
+        Probe probe = Instrumentation.start(this.operator, pairs.size());
 
         for (Pair pair : pairs) {
+            long start = (probe != null) ? System.nanoTime() : 0L;
             results.add(this.operator.execute(pair));
+
+            if (probe != null) {
+                probe.pair(start);
+            }
+        }
+
+        if (probe != null) {
+            probe.stop(results.size());
         }
 
         return results;
     }
 
+    /**
+     * Execute operator on each tuple of the batch and write the resulting
+     * difference values back into the batch.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return updated batch
+     */
+    public PairBatch execute(PairBatch batch) {
+        Probe probe = Instrumentation.start(this.operator, batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            long start = (probe != null) ? System.nanoTime() : 0L;
+            Pair result = this.operator.execute(batch.get(i));
+            batch.setDifference(i, result.getDifference());
+
+            if (probe != null) {
+                probe.pair(start);
+            }
+        }
+
+        if (probe != null) {
+            probe.stop(batch.size());
+        }
+
+        return batch;
+    }
+
     public Operator getOperator() {
         return operator;
     }
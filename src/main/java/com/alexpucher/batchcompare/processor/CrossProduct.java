@@ -0,0 +1,243 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Lazy cross product of bases and candidates. Pairs are created on demand from
+ * their (base index, candidate index) position, the collection itself does
+ * not hold any pairs.<br />
+ * Pair ids are reserved as a single block on creation. Iterating the
+ * collection repeatedly therefore yields equal pairs.<br />
+ * NOTE: the collection is read-only. Its spliterator splits by index range and
+ * supports parallel consumption.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class CrossProduct extends AbstractCollection<Pair> {
+
+    private final List<?> bases;
+    private final List<?> candidates;
+    private final long size;
+    private final long firstId;
+
+    /**
+     * Create {@link CrossProduct} instance on given bases and candidates.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     */
+    public CrossProduct(Collection<?> bases, Collection<?> candidates) {
+        super();
+        this.bases = asRandomAccess(bases);
+        this.candidates = asRandomAccess(candidates);
+        this.size = (long) this.bases.size() * (long) this.candidates.size();
+        this.firstId = PairImpl.getDefaultIdentity().nextIds(this.size);
+    }
+
+    /**
+     * Return pair at given position of the enumeration.
+     * 
+     * @param index
+     *            position in [0, {@link CrossProduct#longSize()})
+     * @return new pair instance
+     */
+    public Pair get(long index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + this.size);
+        }
+
+        int candidateCount = this.candidates.size();
+        return createPair((int) (index / candidateCount),
+                (int) (index % candidateCount), index);
+    }
+
+    /**
+     * Return the number of pairs in the cross product.
+     * 
+     * @return |bases| x |candidates|
+     */
+    public long longSize() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * NOTE: returns {@link Integer#MAX_VALUE} if the cross product is larger.
+     * Use {@link CrossProduct#longSize()} instead.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(this.size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public Iterator<Pair> iterator() {
+        return new CrossProductIterator();
+    }
+
+    @Override
+    public Spliterator<Pair> spliterator() {
+        return new CrossProductSpliterator(0, this.size);
+    }
+
+    private Pair createPair(int baseIndex, int candidateIndex, long index) {
+        return new PairImpl(this.bases.get(baseIndex), this.candidates
+                .get(candidateIndex), this.firstId + index);
+    }
+
+    private static List<?> asRandomAccess(Collection<?> objects) {
+        if (objects instanceof List<?> && objects instanceof RandomAccess) {
+            return (List<?>) objects;
+        }
+        return new ArrayList<Object>(objects);
+    }
+
+    /**
+     * Sequential iterator over the cross product avoiding index arithmetic.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private class CrossProductIterator implements Iterator<Pair> {
+        private long index = 0;
+        private int baseIndex = 0;
+        private int candidateIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+            return this.index < CrossProduct.this.size;
+        }
+
+        @Override
+        public Pair next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Pair pair = createPair(this.baseIndex, this.candidateIndex,
+                    this.index++);
+
+            if (++this.candidateIndex == CrossProduct.this.candidates.size()) {
+                this.candidateIndex = 0;
+                this.baseIndex++;
+            }
+
+            return pair;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Spliterator over an index range [from, to) of the cross product. Splits
+     * the range in halves.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private class CrossProductSpliterator implements Spliterator<Pair> {
+        private long from;
+        private final long to;
+
+        private CrossProductSpliterator(long from, long to) {
+            super();
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pair> action) {
+            if (this.from >= this.to) {
+                return false;
+            }
+            action.accept(get(this.from++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Pair> action) {
+            if (this.from >= this.to) {
+                return;
+            }
+
+            int candidateCount = CrossProduct.this.candidates.size();
+            int baseIndex = (int) (this.from / candidateCount);
+            int candidateIndex = (int) (this.from % candidateCount);
+
+            for (long index = this.from; index < this.to; index++) {
+                action.accept(createPair(baseIndex, candidateIndex, index));
+
+                if (++candidateIndex == candidateCount) {
+                    candidateIndex = 0;
+                    baseIndex++;
+                }
+            }
+
+            this.from = this.to;
+        }
+
+        @Override
+        public Spliterator<Pair> trySplit() {
+            long middle = (this.from + this.to) >>> 1;
+
+            if (middle <= this.from) {
+                return null;
+            }
+
+            Spliterator<Pair> prefix = new CrossProductSpliterator(this.from,
+                    middle);
+            this.from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.to - this.from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+    }
+
+}
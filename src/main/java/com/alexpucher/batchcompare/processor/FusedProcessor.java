@@ -0,0 +1,284 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.alexpucher.batchcompare.ElementWise;
+import com.alexpucher.batchcompare.Equalizer;
+import com.alexpucher.batchcompare.Operator;
+import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.monitor.Instrumentation;
+import com.alexpucher.batchcompare.monitor.Instrumentation.Probe;
+import com.alexpucher.batchcompare.processor.filter.IdentityFilter;
+import com.alexpucher.batchcompare.processor.filter.ThresholdFilter;
+
+/**
+ * Executes a sequence of per-pair processors in a single pass over the input.
+ * Each pair runs through all stages before the next pair is read, a pair
+ * rejected by a filter stage skips the remaining stages.<br />
+ * Supported stages are {@link BatchOperator} with a {@link ThreadSafe}
+ * operator, {@link BatchEqualizer} with an {@link ElementWise} equalizer,
+ * {@link ThresholdFilter} and {@link IdentityFilter}, see
+ * {@link #isFusable(Processor)}. Stage configuration is read once per
+ * execution.<br />
+ * NOTE: the output equals the output of executing the stages one after
+ * another. {@link PairBatch} input is updated in place like with
+ * {@link BatchOperator}.<br />
+ * NOTE: like with {@link BatchOperator}, executions and per-pair latencies of
+ * operator stages are reported to {@link Instrumentation} per operator if
+ * enabled. Their time is the sum of the per-pair latencies.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class FusedProcessor implements Processor, ThreadSafe {
+
+    private static final int OPERATOR = 0;
+    private static final int EQUALIZER = 1;
+    private static final int THRESHOLD = 2;
+    private static final int IDENTITY = 3;
+
+    private final List<Processor> stages;
+
+    /**
+     * Create {@link FusedProcessor} instance with given stages.
+     * 
+     * @param stages
+     *            fusable processors in execution order
+     * @throws IllegalArgumentException
+     *             if a stage is not fusable
+     */
+    public FusedProcessor(List<Processor> stages) {
+        super();
+
+        for (Processor stage : stages) {
+            if (!isFusable(stage)) {
+                throw new IllegalArgumentException("processor not fusable: "
+                        + stage);
+            }
+        }
+
+        this.stages = new ArrayList<Processor>(stages);
+    }
+
+    /**
+     * Test whether a processor acts on each pair independently and may be
+     * executed concurrently, so it can be part of a fused stage. Subclasses of
+     * the supported processors are not fusable.
+     * 
+     * @param processor
+     *            Processor
+     * @return <code>true</code> if the processor can be fused
+     */
+    public static boolean isFusable(Processor processor) {
+        if (processor == null) {
+            return false;
+        }
+
+        Class<?> type = processor.getClass();
+
+        if (type == BatchOperator.class) {
+            return ((BatchOperator) processor).getOperator() instanceof ThreadSafe;
+        }
+        if (type == BatchEqualizer.class) {
+            return ((BatchEqualizer) processor).getEqualizer() instanceof ElementWise;
+        }
+
+        return type == ThresholdFilter.class || type == IdentityFilter.class;
+    }
+
+    @Override
+    public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
+
+        Plan plan = new Plan(this.stages);
+        Collection<Pair> output = new ArrayList<Pair>(pairs.size());
+
+        for (Pair pair : pairs) {
+            Pair current = pair;
+            boolean selected = true;
+
+            for (int s = 0; s < plan.kinds.length && selected; s++) {
+                switch (plan.kinds[s]) {
+                case OPERATOR:
+                    long start = (plan.probes[s] != null) ? System.nanoTime()
+                            : 0L;
+                    current = plan.operators[s].execute(current);
+
+                    if (plan.probes[s] != null) {
+                        plan.probes[s].pair(start);
+                    }
+                    break;
+                case EQUALIZER:
+                    current.setDifference(plan.equalizers[s].equalize(current
+                            .getDifference()));
+                    break;
+                case THRESHOLD:
+                    selected = current.getDifference() <= plan.thresholds[s];
+                    break;
+                default:
+                    break;
+                }
+            }
+
+            if (selected) {
+                output.add(current);
+            }
+        }
+
+        plan.stop();
+        return output;
+    }
+
+    /**
+     * Execute all stages on each tuple of the batch. Difference values are
+     * written back into the batch, the tuples passing all filter stages are
+     * selected once at the end.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return selected tuples, or the updated batch if there is no filter
+     *         stage
+     */
+    public PairBatch execute(PairBatch batch) {
+        Plan plan = new Plan(this.stages);
+        int[] positions = plan.filtering ? new int[batch.size()] : null;
+        int count = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pair view = null;
+            boolean selected = true;
+
+            for (int s = 0; s < plan.kinds.length && selected; s++) {
+                switch (plan.kinds[s]) {
+                case OPERATOR:
+                    if (view == null) {
+                        view = batch.get(i);
+                    }
+                    long start = (plan.probes[s] != null) ? System.nanoTime()
+                            : 0L;
+                    batch.setDifference(i, plan.operators[s].execute(view)
+                            .getDifference());
+
+                    if (plan.probes[s] != null) {
+                        plan.probes[s].pair(start);
+                    }
+                    break;
+                case EQUALIZER:
+                    batch.setDifference(i, plan.equalizers[s].equalize(batch
+                            .getDifference(i)));
+                    break;
+                case THRESHOLD:
+                    selected = batch.getDifference(i) <= plan.thresholds[s];
+                    break;
+                default:
+                    break;
+                }
+            }
+
+            if (selected && positions != null) {
+                positions[count++] = i;
+            }
+        }
+
+        plan.stop();
+        return plan.filtering ? batch.select(positions, count) : batch;
+    }
+
+    /**
+     * Return fused stages in execution order.
+     * 
+     * @return unmodifiable stage list
+     */
+    public List<Processor> getStages() {
+        return Collections.unmodifiableList(this.stages);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FusedProcessor[");
+
+        for (int s = 0; s < this.stages.size(); s++) {
+            if (s > 0) {
+                builder.append(", ");
+            }
+            builder.append(this.stages.get(s).getClass().getSimpleName());
+        }
+
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Stage configuration resolved for one execution.
+     */
+    private static final class Plan {
+        final int[] kinds;
+        final Operator[] operators;
+        final Equalizer[] equalizers;
+        final int[] thresholds;
+        final Probe[] probes;
+        final boolean filtering;
+
+        Plan(List<Processor> stages) {
+            int n = stages.size();
+            this.kinds = new int[n];
+            this.operators = new Operator[n];
+            this.equalizers = new Equalizer[n];
+            this.thresholds = new int[n];
+            this.probes = new Probe[n];
+
+            boolean filtering = false;
+
+            for (int s = 0; s < n; s++) {
+                Processor stage = stages.get(s);
+
+                if (stage instanceof BatchOperator) {
+                    this.kinds[s] = OPERATOR;
+                    this.operators[s] = ((BatchOperator) stage).getOperator();
+                    this.probes[s] = Instrumentation.startNested(this.operators[s]);
+                } else if (stage instanceof BatchEqualizer) {
+                    this.kinds[s] = EQUALIZER;
+                    this.equalizers[s] = ((BatchEqualizer) stage).getEqualizer();
+                } else if (stage instanceof ThresholdFilter) {
+                    this.kinds[s] = THRESHOLD;
+                    this.thresholds[s] = ((ThresholdFilter) stage).getThreshold();
+                    filtering = true;
+                } else {
+                    this.kinds[s] = IDENTITY;
+                }
+            }
+
+            this.filtering = filtering;
+        }
+
+        void stop() {
+            for (Probe probe : this.probes) {
+                if (probe != null) {
+                    probe.stop(probe.getPairs());
+                }
+            }
+        }
+    }
+
+}
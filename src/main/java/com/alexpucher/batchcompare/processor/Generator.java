@@ -37,7 +37,8 @@ public class Generator {
     /**
      * Generate cross product from bases and pairs. The amount of pairs
      * generated equals |bases| x |candidates|. Use with caution on large
-     * datasets.
+     * datasets, consider {@link Generator#crossProduct(Collection, Collection)}
+     * instead.
      * 
      * @param bases
      *            base objects
@@ -74,4 +75,83 @@ public class Generator {
         return generate(Collections.singleton(base), candidates);
     }
 
+    /**
+     * Create a lazy cross product view on bases and candidates. Pairs are
+     * created on demand while iterating, the view itself holds no pairs.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @return lazy enumeration of base-candidate pairs
+     */
+    public static CrossProduct crossProduct(Collection<?> bases,
+            Collection<?> candidates) {
+        return new CrossProduct(bases, candidates);
+    }
+
+    /**
+     * Create a lazy cross product view on a single base and multiple
+     * candidates.
+     * 
+     * @param base
+     *            base object
+     * @param candidates
+     *            candidate objects
+     * @return lazy enumeration of base-candidate pairs
+     */
+    public static CrossProduct crossProduct(Object base,
+            Collection<?> candidates) {
+        return new CrossProduct(Collections.singletonList(base), candidates);
+    }
+
+    /**
+     * Generate cross product from bases and candidates as columnar
+     * {@link PairBatch}. The amount of pairs generated equals |bases| x
+     * |candidates|, however each pair only occupies a few primitive array
+     * slots.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @return complete enumeration of base-candidate pairs
+     */
+    public static PairBatch generateBatch(Collection<?> bases,
+            Collection<?> candidates) {
+        long count = (long) bases.size() * (long) candidates.size();
+
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cross product too large: "
+                    + count + " pairs");
+        }
+
+        PairBatch batch = new PairBatch(bases, candidates, (int) count);
+        long id = PairImpl.getDefaultIdentity().nextIds(count);
+
+        for (int base = 0; base < batch.getBaseCount(); base++) {
+            for (int candidate = 0; candidate < batch.getCandidateCount(); candidate++) {
+                batch.append(base, candidate, id++);
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Generate a full set of pair for a single base and multiple candidates as
+     * columnar {@link PairBatch}. The amount of pairs generated equals
+     * |candidates|.
+     * 
+     * @param base
+     *            base object
+     * @param candidates
+     *            candidate objects
+     * @return complete enumeration of base-candidate pairs
+     */
+    public static PairBatch generateBatch(Object base,
+            Collection<?> candidates) {
+        return generateBatch(Collections.singleton(base), candidates);
+    }
+
 }
@@ -0,0 +1,163 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Exact mapping of pair ids to ordinals. Pairs are identified by id only,
+ * pair contents are never hashed or compared.<br />
+ * NOTE: ids from a dense range are stored in a direct-address array, sparse
+ * ids in a primitive open addressing table, see {@link IdTable}.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class IdIndex {
+
+    public static final int defaultMaxSlotsPerId = 4;
+
+    public static final int NOT_FOUND = IdTable.NOT_FOUND;
+
+    private final long offset;
+    private final int[] direct;
+    private final IdTable table;
+    private int size;
+
+    /**
+     * Create empty {@link IdIndex} instance for the given id range and
+     * expected number of ids.
+     * 
+     * @param minId
+     *            lowest id added
+     * @param maxId
+     *            highest id added
+     * @param expectedSize
+     *            expected number of ids
+     */
+    public IdIndex(long minId, long maxId, int expectedSize) {
+        super();
+        double range = Math.max((double) maxId - (double) minId + 1, 0);
+
+        if (range < Integer.MAX_VALUE
+                && range <= (double) defaultMaxSlotsPerId
+                        * Math.max(expectedSize, 1)) {
+            this.offset = minId;
+            this.direct = new int[(int) range];
+            this.table = null;
+            Arrays.fill(this.direct, NOT_FOUND);
+        } else {
+            this.offset = 0;
+            this.direct = null;
+            this.table = new IdTable(expectedSize, true);
+        }
+    }
+
+    /**
+     * Create {@link IdIndex} instance mapping the ids of the given pairs to
+     * their position in iteration order.<br />
+     * NOTE: if an id occurs more than once, the last position is kept.
+     * 
+     * @param pairs
+     *            base-candidate tuples
+     * @return index of pair ids
+     */
+    public static IdIndex of(Collection<Pair> pairs) {
+        long[] range = IdTable.range(pairs);
+        IdIndex index = new IdIndex(range[0], range[1], pairs.size());
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+
+            for (int i = 0; i < batch.size(); i++) {
+                index.put(batch.getId(i), i);
+            }
+            return index;
+        }
+
+        int position = 0;
+        for (Pair pair : pairs) {
+            index.put(pair.getId(), position++);
+        }
+        return index;
+    }
+
+    /**
+     * Map id to ordinal.
+     * 
+     * @param id
+     *            pair id
+     * @param ordinal
+     *            non-negative ordinal
+     * @return previous ordinal or {@link IdIndex#NOT_FOUND}
+     */
+    public int put(long id, int ordinal) {
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("ordinal must not be negative");
+        }
+
+        if (this.direct == null) {
+            return this.table.put(id, ordinal);
+        }
+
+        int slot = directSlot(id);
+        int previous = this.direct[slot];
+
+        this.direct[slot] = ordinal;
+        if (previous == NOT_FOUND) {
+            this.size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Return ordinal of id.
+     * 
+     * @param id
+     *            pair id
+     * @return ordinal or {@link IdIndex#NOT_FOUND}
+     */
+    public int get(long id) {
+        if (this.direct == null) {
+            return this.table.get(id);
+        }
+
+        long slot = id - this.offset;
+        if (slot < 0 || slot >= this.direct.length) {
+            return NOT_FOUND;
+        }
+        return this.direct[(int) slot];
+    }
+
+    public int size() {
+        return (this.direct == null) ? this.table.size() : this.size;
+    }
+
+    private int directSlot(long id) {
+        long slot = id - this.offset;
+
+        if (slot < 0 || slot >= this.direct.length) {
+            throw new IllegalArgumentException("id " + id
+                    + " outside of index range");
+        }
+
+        return (int) slot;
+    }
+
+}
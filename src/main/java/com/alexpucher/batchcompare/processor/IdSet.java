@@ -0,0 +1,192 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Set of pair ids. Membership is tracked by id only, pair contents are never
+ * hashed or compared.<br />
+ * NOTE: ids from a dense range are stored in a bitset, sparse ids in a
+ * primitive open addressing table, see {@link IdTable}.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class IdSet {
+
+    public static final int defaultMaxBitsPerId = 64;
+
+    private final long offset;
+    private final BitSet bits;
+    private final IdTable table;
+    private int size;
+
+    /**
+     * Create empty {@link IdSet} instance for the given id range and expected
+     * number of ids.
+     * 
+     * @param minId
+     *            lowest id added
+     * @param maxId
+     *            highest id added
+     * @param expectedSize
+     *            expected number of ids
+     */
+    public IdSet(long minId, long maxId, int expectedSize) {
+        super();
+        double range = Math.max((double) maxId - (double) minId + 1, 0);
+
+        if (range < Integer.MAX_VALUE
+                && range <= (double) defaultMaxBitsPerId
+                        * Math.max(expectedSize, 1)) {
+            this.offset = minId;
+            this.bits = new BitSet((int) range);
+            this.table = null;
+        } else {
+            this.offset = 0;
+            this.bits = null;
+            this.table = new IdTable(expectedSize, false);
+        }
+    }
+
+    /**
+     * Create {@link IdSet} instance with the ids of the given pairs.
+     * 
+     * @param pairs
+     *            base-candidate tuples
+     * @return set of pair ids
+     */
+    public static IdSet of(Collection<Pair> pairs) {
+        long[] range = IdTable.range(pairs);
+        IdSet set = new IdSet(range[0], range[1], pairs.size());
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+
+            for (int i = 0; i < batch.size(); i++) {
+                set.add(batch.getId(i));
+            }
+            return set;
+        }
+
+        for (Pair pair : pairs) {
+            set.add(pair.getId());
+        }
+        return set;
+    }
+
+    /**
+     * Return the pairs not contained in the excluded pairs. Pairs are
+     * identified by id and keep their input order.
+     * 
+     * @param pairs
+     *            base-candidate tuples
+     * @param excluded
+     *            tuples removed from the input
+     * @return remaining tuples
+     */
+    public static Collection<Pair> complement(Collection<Pair> pairs,
+            Collection<Pair> excluded) {
+        IdSet set = of(excluded);
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+            int[] positions = new int[batch.size()];
+            int count = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (!set.contains(batch.getId(i))) {
+                    positions[count++] = i;
+                }
+            }
+
+            return batch.select(positions, count);
+        }
+
+        List<Pair> remainder = new ArrayList<Pair>(Math.max(pairs.size()
+                - set.size(), 0));
+
+        for (Pair pair : pairs) {
+            if (!set.contains(pair.getId())) {
+                remainder.add(pair);
+            }
+        }
+
+        return remainder;
+    }
+
+    /**
+     * Add id to the set.
+     * 
+     * @param id
+     *            pair id
+     * @return <code>true</code> if the id was not contained before
+     */
+    public boolean add(long id) {
+        if (this.bits == null) {
+            return this.table.put(id, 0) == IdTable.NOT_FOUND;
+        }
+
+        int index = bitIndex(id);
+
+        if (this.bits.get(index)) {
+            return false;
+        }
+
+        this.bits.set(index);
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Test whether id is contained in the set.
+     * 
+     * @param id
+     *            pair id
+     * @return <code>true</code> if contained
+     */
+    public boolean contains(long id) {
+        if (this.bits != null) {
+            long index = id - this.offset;
+            return index >= 0 && index < Integer.MAX_VALUE
+                    && this.bits.get((int) index);
+        }
+
+        return this.table.get(id) != IdTable.NOT_FOUND;
+    }
+
+    public int size() {
+        return (this.bits == null) ? this.table.size() : this.size;
+    }
+
+    private int bitIndex(long id) {
+        long index = id - this.offset;
+
+        if (index < 0 || index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("id " + id
+                    + " outside of set range");
+        }
+
+        return (int) index;
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Primitive open addressing table of pair ids with optional int values.
+ * Shared by {@link IdSet} and {@link IdIndex} for sparse ids.<br />
+ * NOTE: the load factor is kept at or below 0.5, the capacity is limited to
+ * {@link IdTable#MAX_CAPACITY} slots.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+final class IdTable {
+
+    static final int NOT_FOUND = -1;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final boolean mapped;
+    private long[] keys;
+    private int[] values;
+    private int shift;
+    private int emptyValue = NOT_FOUND;
+    private int size;
+
+    /**
+     * Create empty {@link IdTable} instance.
+     * 
+     * @param expectedSize
+     *            expected number of ids
+     * @param mapped
+     *            store a value per id
+     */
+    IdTable(int expectedSize, boolean mapped) {
+        this.mapped = mapped;
+        allocate(capacity(expectedSize));
+    }
+
+    /**
+     * Return initial capacity for the expected number of ids.
+     */
+    static int capacity(int expectedSize) {
+        long capacity = Long.highestOneBit(Math.max(expectedSize, 2)) << 2;
+        return (int) Math.min(capacity, MAX_CAPACITY);
+    }
+
+    /**
+     * Return lowest and highest id of the given pairs.
+     * 
+     * @param pairs
+     *            base-candidate tuples
+     * @return {min, max}, {Long.MAX_VALUE, Long.MIN_VALUE} if empty
+     */
+    static long[] range(Collection<Pair> pairs) {
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+
+            for (int i = 0; i < batch.size(); i++) {
+                minId = Math.min(minId, batch.getId(i));
+                maxId = Math.max(maxId, batch.getId(i));
+            }
+        } else {
+            for (Pair pair : pairs) {
+                minId = Math.min(minId, pair.getId());
+                maxId = Math.max(maxId, pair.getId());
+            }
+        }
+
+        return new long[] { minId, maxId };
+    }
+
+    /**
+     * Add id with value. Unmapped tables ignore the value and store 0.
+     * 
+     * @return previous value or {@link IdTable#NOT_FOUND}
+     */
+    int put(long id, int value) {
+        int stored = this.mapped ? value : 0;
+
+        if (id == EMPTY) {
+            int previous = this.emptyValue;
+
+            this.emptyValue = stored;
+            if (previous == NOT_FOUND) {
+                this.size++;
+            }
+            return previous;
+        }
+
+        // NOTE: at maximum capacity at least one slot must stay empty
+        if (this.size >= this.keys.length - 1 && get(id) == NOT_FOUND) {
+            throw new IllegalStateException("id table full: " + this.size
+                    + " ids");
+        }
+
+        int previous = insert(id, stored);
+
+        if (previous == NOT_FOUND) {
+            this.size++;
+
+            // NOTE: keep load factor at or below 0.5
+            if (this.size * 2L > this.keys.length) {
+                grow();
+            }
+        }
+
+        return previous;
+    }
+
+    /**
+     * Return value of id.
+     * 
+     * @return value or {@link IdTable#NOT_FOUND}
+     */
+    int get(long id) {
+        if (id == EMPTY) {
+            return this.emptyValue;
+        }
+
+        int mask = this.keys.length - 1;
+        for (int i = slot(id);; i = (i + 1) & mask) {
+            if (this.keys[i] == id) {
+                return this.mapped ? this.values[i] : 0;
+            }
+            if (this.keys[i] == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private void grow() {
+        if (this.keys.length >= MAX_CAPACITY) {
+            return;
+        }
+
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], this.mapped ? oldValues[i] : 0);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = this.mapped ? new int[capacity] : null;
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    private int insert(long id, int value) {
+        int mask = this.keys.length - 1;
+        for (int i = slot(id);; i = (i + 1) & mask) {
+            if (this.keys[i] == id) {
+                int previous = this.mapped ? this.values[i] : 0;
+                if (this.mapped) {
+                    this.values[i] = value;
+                }
+                return previous;
+            }
+            if (this.keys[i] == EMPTY) {
+                this.keys[i] = id;
+                if (this.mapped) {
+                    this.values[i] = value;
+                }
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    private int slot(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+}
@@ -0,0 +1,431 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Columnar collection of pairs. Base and candidate objects are stored once in
+ * domain arrays and referenced by index, per-tuple state (base index,
+ * candidate index, difference and id) is kept in primitive arrays.<br />
+ * The batch acts as a list of {@link Pair} by handing out lightweight views on
+ * individual positions. Existing {@link com.alexpucher.batchcompare.Operator}
+ * and {@link com.alexpucher.batchcompare.Processor} implementations therefore
+ * keep working unmodified, changes to the difference value of a view are
+ * written through to the batch.<br />
+ * Copies share the base index, candidate index and id columns with their
+ * origin and only own a private difference column. A copy reallocates the
+ * shared columns on its next append, the origin is left untouched.<br />
+ * NOTE: the batch is not thread-safe.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class PairBatch extends AbstractList<Pair> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Object[] bases;
+    private final Object[] candidates;
+
+    private int[] baseIndex;
+    private int[] candidateIndex;
+    private int[] difference;
+    private long[] id;
+    private int size;
+    private boolean shared;
+
+    /**
+     * Create empty {@link PairBatch} instance on given base and candidate
+     * domains.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     */
+    public PairBatch(Collection<?> bases, Collection<?> candidates) {
+        this(bases, candidates, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create empty {@link PairBatch} instance on given base and candidate
+     * domains with an initial tuple capacity.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @param capacity
+     *            initial number of tuples
+     */
+    public PairBatch(Collection<?> bases, Collection<?> candidates,
+            int capacity) {
+        this(bases.toArray(), candidates.toArray(), capacity);
+    }
+
+    private PairBatch(Object[] bases, Object[] candidates, int capacity) {
+        super();
+        this.bases = bases;
+        this.candidates = candidates;
+        this.baseIndex = new int[capacity];
+        this.candidateIndex = new int[capacity];
+        this.difference = new int[capacity];
+        this.id = new long[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Return the given pairs as columnar batch. Batches are returned as is,
+     * any other collection is converted. Base and candidate objects are
+     * de-duplicated by reference, pair ids and differences are kept.
+     * 
+     * @param pairs
+     *            base-candidate tuples
+     * @return columnar base-candidate tuples
+     */
+    public static PairBatch of(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return (PairBatch) pairs;
+        }
+
+        Map<Object, Integer> baseLookup = new IdentityHashMap<Object, Integer>();
+        Map<Object, Integer> candidateLookup = new IdentityHashMap<Object, Integer>();
+        List<Object> bases = new ArrayList<Object>();
+        List<Object> candidates = new ArrayList<Object>();
+        int[] baseIndex = new int[pairs.size()];
+        int[] candidateIndex = new int[pairs.size()];
+        int position = 0;
+
+        for (Pair pair : pairs) {
+            baseIndex[position] = lookup(baseLookup, bases, pair.getBase());
+            candidateIndex[position] = lookup(candidateLookup, candidates,
+                    pair.getCandidate());
+            position++;
+        }
+
+        PairBatch batch = new PairBatch(bases.toArray(), candidates.toArray(),
+                pairs.size());
+        position = 0;
+
+        for (Pair pair : pairs) {
+            batch.appendUnchecked(baseIndex[position],
+                    candidateIndex[position], pair.getDifference(),
+                    pair.getId());
+            position++;
+        }
+
+        return batch;
+    }
+
+    /**
+     * Append a new tuple referencing the given base and candidate domain
+     * positions. The id is obtained from the default
+     * {@link com.alexpucher.batchcompare.PairIdentity}, the difference value
+     * is initialized to zero.
+     * 
+     * @param baseIndex
+     *            position in base domain
+     * @param candidateIndex
+     *            position in candidate domain
+     * @return position of the new tuple
+     */
+    public int append(int baseIndex, int candidateIndex) {
+        return append(baseIndex, candidateIndex, PairImpl.getDefaultIdentity()
+                .nextId());
+    }
+
+    /**
+     * Append a new tuple with given id referencing the given base and
+     * candidate domain positions. The difference value is initialized to zero.
+     * 
+     * @param baseIndex
+     *            position in base domain
+     * @param candidateIndex
+     *            position in candidate domain
+     * @param id
+     *            pair id
+     * @return position of the new tuple
+     */
+    public int append(int baseIndex, int candidateIndex, long id) {
+        if (baseIndex < 0 || baseIndex >= this.bases.length) {
+            throw new IndexOutOfBoundsException("Base index: " + baseIndex);
+        }
+        if (candidateIndex < 0 || candidateIndex >= this.candidates.length) {
+            throw new IndexOutOfBoundsException("Candidate index: "
+                    + candidateIndex);
+        }
+        return appendUnchecked(baseIndex, candidateIndex, 0, id);
+    }
+
+    /**
+     * Return a new batch on the same domains containing the tuples at the
+     * given positions in the given order.
+     * 
+     * @param positions
+     *            tuple positions
+     * @param count
+     *            number of positions used
+     * @return selected tuples
+     */
+    public PairBatch select(int[] positions, int count) {
+        PairBatch selection = new PairBatch(this.bases, this.candidates, count);
+
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            checkPosition(position);
+            selection.appendUnchecked(this.baseIndex[position],
+                    this.candidateIndex[position], this.difference[position],
+                    this.id[position]);
+        }
+
+        return selection;
+    }
+
+    /**
+     * Create a Tuple-level copy of the batch. Domains as well as the index and
+     * id columns are shared, only the difference column is copied.<br />
+     * NOTE: the origin batch is not modified, so multiple threads may copy the
+     * same batch concurrently. Shared columns are append-only and the copy
+     * never reads beyond its own size, therefore only the copy reallocates
+     * them on its next append.
+     * 
+     * @return independent copy of the batch
+     */
+    public PairBatch copy() {
+        PairBatch copy = new PairBatch(this.bases, this.candidates, 0);
+        copy.baseIndex = this.baseIndex;
+        copy.candidateIndex = this.candidateIndex;
+        copy.difference = Arrays.copyOf(this.difference, this.size);
+        copy.id = this.id;
+        copy.size = this.size;
+        copy.shared = true;
+        return copy;
+    }
+
+    /**
+     * Return tuple positions ordered by ascending difference value. Tuples
+     * with equal difference keep their relative order.
+     * 
+     * @return ordered tuple positions
+     */
+    public int[] order() {
+        long[] keys = new long[this.size];
+
+        for (int i = 0; i < this.size; i++) {
+            keys[i] = ((long) this.difference[i] << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int[] positions = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            positions[i] = (int) keys[i];
+        }
+
+        return positions;
+    }
+
+    /**
+     * Return a copy of the difference values of all tuples.
+     * 
+     * @return difference values in tuple order
+     */
+    public int[] getDifferences() {
+        return Arrays.copyOf(this.difference, this.size);
+    }
+
+    public Object getBase(int position) {
+        checkPosition(position);
+        return this.bases[this.baseIndex[position]];
+    }
+
+    public Object getCandidate(int position) {
+        checkPosition(position);
+        return this.candidates[this.candidateIndex[position]];
+    }
+
+    public int getBaseIndex(int position) {
+        checkPosition(position);
+        return this.baseIndex[position];
+    }
+
+    public int getCandidateIndex(int position) {
+        checkPosition(position);
+        return this.candidateIndex[position];
+    }
+
+    public int getDifference(int position) {
+        checkPosition(position);
+        return this.difference[position];
+    }
+
+    public void setDifference(int position, int difference) {
+        checkPosition(position);
+        this.difference[position] = difference;
+    }
+
+    public long getId(int position) {
+        checkPosition(position);
+        return this.id[position];
+    }
+
+    public int getBaseCount() {
+        return this.bases.length;
+    }
+
+    public int getCandidateCount() {
+        return this.candidates.length;
+    }
+
+    /**
+     * {@inheritDoc}<br />
+     * NOTE: returns a view on the tuple at the given position.
+     */
+    @Override
+    public Pair get(int position) {
+        checkPosition(position);
+        return new PairView(this, position);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    private int appendUnchecked(int baseIndex, int candidateIndex,
+            int difference, long id) {
+        if (this.shared || this.size == this.difference.length) {
+            int capacity = this.difference.length;
+            if (this.size == capacity) {
+                capacity = Math.max(DEFAULT_CAPACITY, this.size * 2);
+            }
+            this.baseIndex = Arrays.copyOf(this.baseIndex, capacity);
+            this.candidateIndex = Arrays.copyOf(this.candidateIndex, capacity);
+            this.difference = Arrays.copyOf(this.difference, capacity);
+            this.id = Arrays.copyOf(this.id, capacity);
+            this.shared = false;
+        }
+
+        int position = this.size++;
+        this.baseIndex[position] = baseIndex;
+        this.candidateIndex[position] = candidateIndex;
+        this.difference[position] = difference;
+        this.id[position] = id;
+
+        return position;
+    }
+
+    private static int lookup(Map<Object, Integer> lookup,
+            List<Object> domain, Object value) {
+        Integer index = lookup.get(value);
+
+        if (index == null) {
+            index = domain.size();
+            lookup.put(value, index);
+            domain.add(value);
+        }
+
+        return index;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= this.size) {
+            throw new IndexOutOfBoundsException("Position: " + position
+                    + ", Size: " + this.size);
+        }
+    }
+
+    /**
+     * {@link Pair} view on a single tuple of a {@link PairBatch}.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class PairView implements Pair {
+
+        private final PairBatch batch;
+        private final int position;
+
+        private PairView(PairBatch batch, int position) {
+            super();
+            this.batch = batch;
+            this.position = position;
+        }
+
+        @Override
+        public Object getBase() {
+            return this.batch.getBase(this.position);
+        }
+
+        @Override
+        public Object getCandidate() {
+            return this.batch.getCandidate(this.position);
+        }
+
+        @Override
+        public long getId() {
+            return this.batch.getId(this.position);
+        }
+
+        @Override
+        public UUID getUUID() {
+            return PairImpl.toUUID(getId());
+        }
+
+        @Override
+        public int getDifference() {
+            return this.batch.getDifference(this.position);
+        }
+
+        @Override
+        public Pair setDifference(int difference) {
+            this.batch.setDifference(this.position, difference);
+            return this;
+        }
+
+        @Override
+        public int compareTo(Pair o) {
+            return getDifference() - o.getDifference();
+        }
+
+        @Override
+        public int hashCode() {
+            return PairImpl.hashCode(getId());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Pair))
+                return false;
+            return getId() == ((Pair) obj).getId();
+        }
+
+    }
+
+}
@@ -18,22 +18,29 @@ package com.alexpucher.batchcompare.processor;
 import java.util.UUID;
 
 import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.PairIdentity;
+import com.alexpucher.batchcompare.processor.identity.SequentialIdentity;
 
 /**
- * Implementation of {@link Pair} interface.
+ * Implementation of {@link Pair} interface. New pairs obtain their id from the
+ * default {@link PairIdentity}, the UUID is derived on demand.
  * 
  * @author Alexander Pucher
  * 
  */
 public class PairImpl implements Pair {
 
+    private static volatile PairIdentity defaultIdentity = new SequentialIdentity();
+
     private Object base;
     private Object candidate;
     private int difference;
+    private long id;
     private UUID uuid;
 
     /**
-     * Create {@link PairImpl} instance with new UUID
+     * Create {@link PairImpl} instance with new id from the default
+     * {@link PairIdentity}.
      * 
      * @param base
      *            base object
@@ -41,15 +48,29 @@ public class PairImpl implements Pair {
      *            candidate object
      */
     public PairImpl(Object base, Object candidate) {
+        this(base, candidate, defaultIdentity.nextId());
+    }
+
+    /**
+     * Create {@link PairImpl} instance with given id.
+     * 
+     * @param base
+     *            base object
+     * @param candidate
+     *            candidate object
+     * @param id
+     *            pair id
+     */
+    public PairImpl(Object base, Object candidate, long id) {
         super();
         this.base = base;
         this.candidate = candidate;
         this.difference = 0;
-        this.uuid = UUID.randomUUID();
+        this.id = id;
     }
 
     /**
-     * Create {@link PairImpl} instance from given pair copying UUID and setting
+     * Create {@link PairImpl} instance from given pair copying id and setting
      * new difference value.
      * 
      * @param pair
@@ -62,11 +83,12 @@ public class PairImpl implements Pair {
         this.base = pair.getBase();
         this.candidate = pair.getCandidate();
         this.difference = difference;
-        this.uuid = pair.getUUID();
+        this.id = pair.getId();
+        this.uuid = copyUUID(pair);
     }
 
     /**
-     * Create {@link PairImpl} instance from given pair copying UUID
+     * Create {@link PairImpl} instance from given pair copying id
      * 
      * @param pair
      *            source pair
@@ -76,7 +98,43 @@ public class PairImpl implements Pair {
         this.base = pair.getBase();
         this.candidate = pair.getCandidate();
         this.difference = pair.getDifference();
-        this.uuid = pair.getUUID();
+        this.id = pair.getId();
+        this.uuid = copyUUID(pair);
+    }
+
+    /**
+     * Return the {@link PairIdentity} used for new pairs.
+     * 
+     * @return default pair identity
+     */
+    public static PairIdentity getDefaultIdentity() {
+        return defaultIdentity;
+    }
+
+    /**
+     * Set the {@link PairIdentity} used for new pairs.<br />
+     * NOTE: pairs created before and after the change may share ids, depending
+     * on the strategies involved.
+     * 
+     * @param identity
+     *            default pair identity
+     */
+    public static void setDefaultIdentity(PairIdentity identity) {
+        if (identity == null) {
+            throw new IllegalArgumentException("Identity must not be null.");
+        }
+        defaultIdentity = identity;
+    }
+
+    /**
+     * Derive UUID from pair id.
+     * 
+     * @param id
+     *            pair id
+     * @return UUID representation of the id
+     */
+    public static UUID toUUID(long id) {
+        return new UUID(0L, id);
     }
 
     public PairImpl setBase(Object base) {
@@ -89,7 +147,22 @@ public class PairImpl implements Pair {
         return this;
     }
 
+    public PairImpl setId(long id) {
+        this.id = id;
+        this.uuid = null;
+        return this;
+    }
+
+    /**
+     * Set explicit UUID. The pair id is derived by folding the UUID into a
+     * single long value.
+     * 
+     * @param uuid
+     *            pair uuid
+     * @return pair instance (monadic)
+     */
     public PairImpl setUUID(UUID uuid) {
+        this.id = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
         this.uuid = uuid;
         return this;
     }
@@ -115,8 +188,16 @@ public class PairImpl implements Pair {
         return difference;
     }
 
+    @Override
+    public long getId() {
+        return this.id;
+    }
+
     @Override
     public UUID getUUID() {
+        if (this.uuid == null) {
+            this.uuid = toUUID(this.id);
+        }
         return this.uuid;
     }
 
@@ -127,40 +208,32 @@ public class PairImpl implements Pair {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((base == null) ? 0 : base.hashCode());
-        result = prime * result
-                + ((candidate == null) ? 0 : candidate.hashCode());
-        result = prime * result + ((uuid == null) ? 0 : uuid.hashCode());
-        return result;
+        return hashCode(this.id);
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
             return true;
-        if (obj == null)
+        if (!(obj instanceof Pair))
             return false;
-        if (getClass() != obj.getClass())
-            return false;
-        PairImpl other = (PairImpl) obj;
-        if (base == null) {
-            if (other.base != null)
-                return false;
-        } else if (!base.equals(other.base))
-            return false;
-        if (candidate == null) {
-            if (other.candidate != null)
-                return false;
-        } else if (!candidate.equals(other.candidate))
-            return false;
-        if (uuid == null) {
-            if (other.uuid != null)
-                return false;
-        } else if (!uuid.equals(other.uuid))
-            return false;
-        return true;
+        return this.id == ((Pair) obj).getId();
+    }
+
+    /**
+     * Hash code of a pair with the given id. Shared by all {@link Pair}
+     * implementations in this package.
+     * 
+     * @param id
+     *            pair id
+     * @return hash code
+     */
+    static int hashCode(long id) {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    private static UUID copyUUID(Pair pair) {
+        return (pair instanceof PairImpl) ? ((PairImpl) pair).uuid : null;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,300 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.alexpucher.batchcompare.Operator;
+import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.Replicable;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.monitor.Instrumentation;
+import com.alexpucher.batchcompare.monitor.Instrumentation.Probe;
+
+/**
+ * Runs a binary Operator on collections of pairs using a {@link ForkJoinPool}.
+ * The input is split recursively down to a minimum split size, results keep
+ * the input order.<br />
+ * {@link ThreadSafe} operators are shared between worker threads,
+ * {@link Replicable} operators are replicated once per split. Any other
+ * operator is executed sequentially on the calling thread.<br />
+ * NOTE: parallel executions are reported to {@link Instrumentation} per
+ * operator and leaf split, each split with its per-pair latencies.<br />
+ * NOTE: by default the common {@link ForkJoinPool} is used. Instances with an
+ * explicit parallelism own a private pool which is created on first use and
+ * released by {@link #close()}. Injected pools are never shut down by the
+ * operator.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class ParallelBatchOperator extends BatchOperator implements
+        AutoCloseable {
+
+    public static final int defaultMinSplitSize = 1024;
+
+    private int parallelism;
+    private int minSplitSize;
+    private ForkJoinPool pool;
+    private boolean ownsPool;
+
+    /**
+     * Create {@link ParallelBatchOperator} instance with given operator using
+     * the common {@link ForkJoinPool}.
+     * 
+     * @param operator
+     *            operator for base-candidate comparison
+     */
+    public ParallelBatchOperator(Operator operator) {
+        this(operator, ForkJoinPool.commonPool(), defaultMinSplitSize);
+    }
+
+    /**
+     * Create {@link ParallelBatchOperator} instance with given operator, pool
+     * and minimum split size.<br />
+     * NOTE: the pool is owned by the caller.
+     * 
+     * @param operator
+     *            operator for base-candidate comparison
+     * @param pool
+     *            pool executing the splits
+     * @param minSplitSize
+     *            minimum number of pairs processed by a single split
+     */
+    public ParallelBatchOperator(Operator operator, ForkJoinPool pool,
+            int minSplitSize) {
+        super(operator);
+        setPool(pool);
+        setMinSplitSize(minSplitSize);
+    }
+
+    /**
+     * Create {@link ParallelBatchOperator} instance with given operator,
+     * parallelism and minimum split size. The instance owns a private pool,
+     * see {@link #close()}.
+     * 
+     * @param operator
+     *            operator for base-candidate comparison
+     * @param parallelism
+     *            number of worker threads
+     * @param minSplitSize
+     *            minimum number of pairs processed by a single split
+     */
+    public ParallelBatchOperator(Operator operator, int parallelism,
+            int minSplitSize) {
+        super(operator);
+        setParallelism(parallelism);
+        setMinSplitSize(minSplitSize);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.processor.BatchOperator#execute(java.util
+     * .Collection)
+     */
+    @Override
+    public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
+
+        if (!isParallel(pairs.size())) {
+            return super.execute(pairs);
+        }
+
+        Pair[] results = pairs.toArray(new Pair[pairs.size()]);
+        getPool().invoke(new OperatorAction(Arrays.asList(results), results, 0,
+                results.length));
+
+        return new ArrayList<Pair>(Arrays.asList(results));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.processor.BatchOperator#execute(com.alexpucher
+     * .batchcompare.processor.PairBatch)
+     */
+    @Override
+    public PairBatch execute(PairBatch batch) {
+        if (!isParallel(batch.size())) {
+            return super.execute(batch);
+        }
+
+        getPool().invoke(new OperatorAction(batch, null, 0, batch.size()));
+
+        return batch;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set parallelism. Switches to a private pool of the given size unless
+     * the current private pool already has that size.
+     * 
+     * @param parallelism
+     *            number of worker threads
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (!this.ownsPool || parallelism != this.parallelism) {
+            close();
+            this.ownsPool = true;
+        }
+        this.parallelism = parallelism;
+    }
+
+    public synchronized ForkJoinPool getPool() {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Use given pool for parallel execution. A private pool is released.
+     * 
+     * @param pool
+     *            pool owned by the caller
+     */
+    public synchronized void setPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool must not be null.");
+        }
+        close();
+        this.pool = pool;
+        this.ownsPool = false;
+        this.parallelism = pool.getParallelism();
+    }
+
+    /**
+     * Shut down the private pool, if any. A new private pool is created on
+     * the next parallel execution. Injected pools are not affected.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.ownsPool && this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    public int getMinSplitSize() {
+        return minSplitSize;
+    }
+
+    public void setMinSplitSize(int minSplitSize) {
+        if (minSplitSize < 1) {
+            throw new IllegalArgumentException(
+                    "Minimum split size must be positive.");
+        }
+        this.minSplitSize = minSplitSize;
+    }
+
+    private boolean isParallel(int size) {
+        Operator operator = getOperator();
+
+        return this.parallelism > 1 && size > this.minSplitSize
+                && (operator instanceof ThreadSafe || operator instanceof Replicable<?>);
+    }
+
+    /**
+     * Return operator instance for exclusive use by a single split.
+     */
+    private Operator leafOperator() {
+        Operator operator = getOperator();
+
+        if (operator instanceof ThreadSafe) {
+            return operator;
+        }
+
+        return (Operator) ((Replicable<?>) operator).replicate();
+    }
+
+    /**
+     * Executes the operator on a range of pairs. Results are either written to
+     * the result array at the input position or, if no array is given, back
+     * into the input {@link PairBatch}.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private class OperatorAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Pair> pairs;
+        private final Pair[] results;
+        private final int from;
+        private final int to;
+
+        private OperatorAction(List<Pair> pairs, Pair[] results, int from,
+                int to) {
+            super();
+            this.pairs = pairs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= ParallelBatchOperator.this.minSplitSize) {
+                Operator operator = leafOperator();
+                Probe probe = Instrumentation.start(getOperator(), this.to
+                        - this.from);
+
+                for (int i = this.from; i < this.to; i++) {
+                    long start = (probe != null) ? System.nanoTime() : 0L;
+                    Pair result = operator.execute(this.pairs.get(i));
+
+                    if (this.results != null) {
+                        this.results[i] = result;
+                    } else {
+                        ((PairBatch) this.pairs).setDifference(i, result
+                                .getDifference());
+                    }
+
+                    if (probe != null) {
+                        probe.pair(start);
+                    }
+                }
+
+                if (probe != null) {
+                    probe.stop(this.to - this.from);
+                }
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new OperatorAction(this.pairs, this.results, this.from,
+                    middle), new OperatorAction(this.pairs, this.results,
+                    middle, this.to));
+        }
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.alexpucher.batchcompare.processor.equalizer;
 
+import com.alexpucher.batchcompare.ElementWise;
 import com.alexpucher.batchcompare.Equalizer;
 
 /**
@@ -27,7 +28,7 @@ import com.alexpucher.batchcompare.Equalizer;
  * @author Alexander Pucher
  * 
  */
-public class ExponentialEqualizer implements Equalizer {
+public class ExponentialEqualizer implements Equalizer, ElementWise {
 
     protected int outputRange;
 
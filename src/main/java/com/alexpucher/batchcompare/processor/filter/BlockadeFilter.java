@@ -16,10 +16,13 @@
 package com.alexpucher.batchcompare.processor.filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
-import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
  * Returns an empty result independently of the input.
@@ -27,11 +30,20 @@ import com.alexpucher.batchcompare.Processor;
  * @author Alexander Pucher
  *
  */
-public class BlockadeFilter implements Processor {
+public class BlockadeFilter implements Filter, ThreadSafe {
 
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return ((PairBatch) pairs).select(new int[0], 0);
+        }
+
         return new ArrayList<Pair>();
     }
 
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        return new BitSet();
+    }
+
 }
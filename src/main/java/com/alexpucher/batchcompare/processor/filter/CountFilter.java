@@ -15,24 +15,37 @@
  */
 package com.alexpucher.batchcompare.processor.filter;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
+import com.alexpucher.batchcompare.Barrier;
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
-import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
  * Filters out any element not placed in the first group of x elements in an
- * ordered ranking.
+ * ordered ranking.<br />
+ * NOTE: streams the input through a bounded heap of x elements instead of
+ * sorting it. In parallel mode, the input is split up and the heaps of all
+ * splits are merged. Columnar batches use a linear-time selection if x is
+ * large compared to the batch size.
  * 
  * @author Alexander Pucher
  * 
  */
-public class CountFilter implements Processor {
+public class CountFilter implements Filter, Barrier, ThreadSafe {
+
+    public static final int defaultMinSplitSize = 4096;
+    public static final int defaultHeapRatio = 16;
 
     int count;
+    private boolean parallel;
 
     /**
      * Create {@link CountFilter} instance with given tuple count.
@@ -41,8 +54,22 @@ public class CountFilter implements Processor {
      *            maximum tuple count
      */
     public CountFilter(int count) {
+        this(count, false);
+    }
+
+    /**
+     * Create {@link CountFilter} instance with given tuple count and
+     * execution mode.
+     * 
+     * @param count
+     *            maximum tuple count
+     * @param parallel
+     *            select on multiple threads
+     */
+    public CountFilter(int count, boolean parallel) {
         super();
         this.count = count;
+        this.parallel = parallel;
     }
 
     public int getCount() {
@@ -53,6 +80,14 @@ public class CountFilter implements Processor {
         this.count = count;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -60,11 +95,146 @@ public class CountFilter implements Processor {
      */
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
+
+        return topK(pairs).sorted();
+    }
+
+    /**
+     * Select the first tuples of the batch in an ordered ranking.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return selected tuples in ranking order
+     */
+    public PairBatch execute(PairBatch batch) {
+        int[] selection = positions(batch);
+        return batch.select(selection, selection.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.alexpucher.batchcompare.Filter#select(java.util.Collection)
+     */
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            int[] selection = positions((PairBatch) pairs);
+            return FilterUtils.selection(selection, selection.length);
+        }
+
+        BitSet selection = new BitSet(pairs.size());
+
+        for (long position : topK(pairs).sortedPositions()) {
+            selection.set((int) position);
+        }
+
+        return selection;
+    }
+
+    private TopK topK(Collection<Pair> pairs) {
+        int capacity = capacity(pairs.size());
+
+        if (this.parallel && pairs.size() > defaultMinSplitSize) {
+            return ForkJoinPool.commonPool().invoke(
+                    new TopKTask(pairs.spliterator(), 0, capacity));
+        }
+
+        TopK heap = new TopK(capacity);
+        long position = 0;
+
+        for (Pair pair : pairs) {
+            heap.offer(pair, position++);
+        }
+
+        return heap;
+    }
+
+    private int[] positions(PairBatch batch) {
+        int capacity = capacity(batch.size());
+
+        if (capacity > batch.size() / defaultHeapRatio) {
+            return Selection.select(batch.getDifferences(), capacity, true);
+        }
+
+        TopK heap = new TopK(capacity);
+
+        for (int i = 0; i < batch.size(); i++) {
+            heap.offer(null, batch.getDifference(i), i);
+        }
+
+        long[] positions = heap.sortedPositions();
+        int[] selection = new int[positions.length];
+
+        for (int i = 0; i < positions.length; i++) {
+            selection[i] = (int) positions[i];
+        }
+
+        return selection;
+    }
+
+    private int capacity(int size) {
+        return Math.max(0, Math.min(this.count, size));
+    }
+
+    /**
+     * Computes the top-k of a split of the input. Splits as long as the
+     * spliterator yields prefixes of known size.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class TopKTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<Pair> spliterator;
+        private final long offset;
+        private final int capacity;
+
+        private TopKTask(Spliterator<Pair> spliterator, long offset,
+                int capacity) {
+            super();
+            this.spliterator = spliterator;
+            this.offset = offset;
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (this.spliterator.estimateSize() > defaultMinSplitSize
+                    && this.spliterator.hasCharacteristics(Spliterator.ORDERED
+                            | Spliterator.SUBSIZED)) {
+                Spliterator<Pair> prefix = this.spliterator.trySplit();
+
+                if (prefix != null) {
+                    TopKTask left = new TopKTask(prefix, this.offset,
+                            this.capacity);
+                    TopKTask right = new TopKTask(this.spliterator,
+                            this.offset + prefix.estimateSize(), this.capacity);
+
+                    left.fork();
+                    TopK heap = right.compute();
+                    heap.merge(left.join());
+                    return heap;
+                }
+            }
+
+            final TopK heap = new TopK(this.capacity);
+
+            this.spliterator.forEachRemaining(new Consumer<Pair>() {
+                private long position = TopKTask.this.offset;
 
-        List<Pair> list = new ArrayList<Pair>(pairs);
-        Collections.sort(list);
+                @Override
+                public void accept(Pair pair) {
+                    heap.offer(pair, this.position++);
+                }
+            });
 
-        return list.subList(0, Math.min(this.count, list.size()));
+            return heap;
+        }
     }
 
 }
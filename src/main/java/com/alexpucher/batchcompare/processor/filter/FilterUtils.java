@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import com.alexpucher.batchcompare.Filter;
+import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.processor.IdSet;
+import com.alexpucher.batchcompare.processor.PairBatch;
+import com.alexpucher.batchcompare.processor.PairImpl;
+
+/**
+ * Utilities for working with selection vectors of filters.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class FilterUtils {
+
+    private FilterUtils() {
+        // left blank
+    }
+
+    /**
+     * Compute the selection vector of an arbitrary processor. {@link Filter}
+     * implementations select directly, any other processor is executed on an
+     * independent copy of the input and its result is matched by pair id.<br />
+     * NOTE: the input is not modified in either case, list input is copied
+     * pair by pair like {@link PairBatch} input.
+     * 
+     * @param processor
+     *            filter processor
+     * @param pairs
+     *            collection of base-candidate tuples
+     * @return selection vector in iteration order of the input
+     */
+    public static BitSet selection(Processor processor, Collection<Pair> pairs) {
+        if (processor instanceof Filter) {
+            return ((Filter) processor).select(pairs);
+        }
+
+        Collection<Pair> input;
+        if (pairs instanceof PairBatch) {
+            input = ((PairBatch) pairs).copy();
+        } else {
+            input = new ArrayList<Pair>(pairs.size());
+
+            for (Pair pair : pairs) {
+                input.add(new PairImpl(pair));
+            }
+        }
+
+        IdSet matched = IdSet.of(processor.execute(input));
+        BitSet selection = new BitSet(pairs.size());
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+            for (int i = 0; i < batch.size(); i++) {
+                if (matched.contains(batch.getId(i))) {
+                    selection.set(i);
+                }
+            }
+            return selection;
+        }
+
+        int position = 0;
+        for (Pair pair : pairs) {
+            if (matched.contains(pair.getId())) {
+                selection.set(position);
+            }
+            position++;
+        }
+
+        return selection;
+    }
+
+    /**
+     * Create a selection vector from tuple positions.
+     * 
+     * @param positions
+     *            selected positions
+     * @param count
+     *            number of positions used
+     * @return selection vector
+     */
+    public static BitSet selection(int[] positions, int count) {
+        BitSet selection = new BitSet();
+
+        for (int i = 0; i < count; i++) {
+            selection.set(positions[i]);
+        }
+
+        return selection;
+    }
+
+    /**
+     * Materialize the tuples with the given selection state. Tuples keep their
+     * input order, {@link PairBatch} input yields a {@link PairBatch}.
+     * 
+     * @param pairs
+     *            collection of base-candidate tuples
+     * @param selection
+     *            selection vector
+     * @param selected
+     *            return selected tuples if <code>true</code>, unselected
+     *            tuples otherwise
+     * @return selected or unselected tuples
+     */
+    public static Collection<Pair> apply(Collection<Pair> pairs,
+            BitSet selection, boolean selected) {
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+            int[] positions = new int[batch.size()];
+            int count = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (selection.get(i) == selected) {
+                    positions[count++] = i;
+                }
+            }
+
+            return batch.select(positions, count);
+        }
+
+        List<Pair> output = new ArrayList<Pair>();
+        int position = 0;
+
+        for (Pair pair : pairs) {
+            if (selection.get(position++) == selected) {
+                output.add(pair);
+            }
+        }
+
+        return output;
+    }
+
+}
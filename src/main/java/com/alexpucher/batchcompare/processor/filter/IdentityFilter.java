@@ -15,10 +15,12 @@
  */
 package com.alexpucher.batchcompare.processor.filter;
 
+import java.util.BitSet;
 import java.util.Collection;
 
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
-import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
 
 /**
  * Returns the input unmodified as result.
@@ -26,11 +28,18 @@ import com.alexpucher.batchcompare.Processor;
  * @author Alexander Pucher
  *
  */
-public class IdentityFilter implements Processor {
+public class IdentityFilter implements Filter, ThreadSafe {
 
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
         return pairs;
     }
 
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        BitSet selection = new BitSet(pairs.size());
+        selection.set(0, pairs.size());
+        return selection;
+    }
+
 }
@@ -15,21 +15,24 @@
  */
 package com.alexpucher.batchcompare.processor.filter;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
 
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.processor.IdSet;
 
 /**
  * Inverts the result set of a filter.<br />
  * Given a set {a, b, c} and a filter result {a} the output of the inverter is
- * {b, c}.
+ * {b, c}.<br />
+ * NOTE: pairs are matched by id, the output keeps the input order.
  * 
  * @author Alexander Pucher
  * 
  */
-public class Inverter implements Processor {
+public class Inverter implements Filter {
 
     private Processor filter;
 
@@ -50,12 +53,25 @@ public class Inverter implements Processor {
      */
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
-        Collection<Pair> inputCopy = new HashSet<Pair>(pairs);
+        if (this.filter instanceof Filter) {
+            return FilterUtils.apply(pairs, ((Filter) this.filter).select(pairs),
+                    false);
+        }
+
         Collection<Pair> output = this.filter.execute(pairs);
 
-        inputCopy.removeAll(output);
+        return IdSet.complement(pairs, output);
+    }
 
-        return inputCopy;
+    /*
+     * (non-Javadoc)
+     * @see com.alexpucher.batchcompare.Filter#select(java.util.Collection)
+     */
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        BitSet selection = FilterUtils.selection(this.filter, pairs);
+        selection.flip(0, pairs.size());
+        return selection;
     }
 
     public Processor getFilter() {
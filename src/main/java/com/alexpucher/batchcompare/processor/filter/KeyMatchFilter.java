@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.alexpucher.batchcompare.KeyExtractor;
+import com.alexpucher.batchcompare.KeyFilter;
+import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.PairBatch;
+
+/**
+ * Selects pairs whose base and candidate share the same key. Objects without
+ * key (<code>null</code>) never match.<br />
+ * NOTE: applied to a cross product, the filter selects the same pairs in the
+ * same order as a {@link com.alexpucher.batchcompare.processor.generator.BlockingGenerator}
+ * with the same extractor generates them.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class KeyMatchFilter implements KeyFilter, ThreadSafe {
+
+    private KeyExtractor extractor;
+
+    /**
+     * Create {@link KeyMatchFilter} instance with given key extractor.
+     * 
+     * @param extractor
+     *            key extractor applied to bases and candidates
+     */
+    public KeyMatchFilter(KeyExtractor extractor) {
+        super();
+        this.extractor = extractor;
+    }
+
+    @Override
+    public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
+
+        Collection<Pair> output = new ArrayList<Pair>();
+
+        for (Pair pair : pairs) {
+            if (matches(pair.getBase(), pair.getCandidate())) {
+                output.add(pair);
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Select tuples of the batch sharing the key.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return selected tuples
+     */
+    public PairBatch execute(PairBatch batch) {
+        int[] positions = new int[batch.size()];
+        int count = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (matches(batch.getBase(i), batch.getCandidate(i))) {
+                positions[count++] = i;
+            }
+        }
+
+        return batch.select(positions, count);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.alexpucher.batchcompare.Filter#select(java.util.Collection)
+     */
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        BitSet selection = new BitSet(pairs.size());
+        int position = 0;
+
+        for (Pair pair : pairs) {
+            if (matches(pair.getBase(), pair.getCandidate())) {
+                selection.set(position);
+            }
+            position++;
+        }
+
+        return selection;
+    }
+
+    private boolean matches(Object base, Object candidate) {
+        Object key = this.extractor.extractKey(base);
+        return key != null && key.equals(this.extractor.extractKey(candidate));
+    }
+
+    public KeyExtractor getExtractor() {
+        return extractor;
+    }
+
+    public void setExtractor(KeyExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+}
@@ -16,22 +16,28 @@
 package com.alexpucher.batchcompare.processor.filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
+import com.alexpucher.batchcompare.Barrier;
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
-import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
- * Filters out any element surpassing the x% mark in an ordered ranking.
+ * Filters out any element surpassing the x% mark in an ordered ranking.<br />
+ * NOTE: selects the cutoff without sorting the input. Results keep their input
+ * order unless sorted output is requested.
  * 
  * @author Alexander Pucher
  * 
  */
-public class PercentFilter implements Processor {
+public class PercentFilter implements Filter, Barrier, ThreadSafe {
 
     private double percent;
+    private boolean sorted;
 
     /**
      * Create PercentFilter instance with given result set percentage<br />
@@ -41,8 +47,23 @@ public class PercentFilter implements Processor {
      *            percentage of results kept
      */
     public PercentFilter(double percent) {
+        this(percent, false);
+    }
+
+    /**
+     * Create PercentFilter instance with given result set percentage and
+     * output order<br />
+     * <b>INVARIANT:</b> 0.0 < percent < 1.0
+     * 
+     * @param percent
+     *            percentage of results kept
+     * @param sorted
+     *            return results in ranking order
+     */
+    public PercentFilter(double percent, boolean sorted) {
         super();
         this.percent = percent;
+        this.sorted = sorted;
     }
 
     public double getPercent() {
@@ -59,6 +80,14 @@ public class PercentFilter implements Processor {
         this.percent = percent;
     }
 
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -66,12 +95,67 @@ public class PercentFilter implements Processor {
      */
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
+
+        int numElements = (int) Math.ceil(pairs.size() * this.percent);
+
+        Pair[] input = pairs.toArray(new Pair[pairs.size()]);
+        int[] differences = new int[input.length];
+
+        for (int i = 0; i < input.length; i++) {
+            differences[i] = input[i].getDifference();
+        }
+
+        int[] selection = Selection.select(differences, numElements,
+                this.sorted);
+        List<Pair> list = new ArrayList<Pair>(selection.length);
+
+        for (int position : selection) {
+            list.add(input[position]);
+        }
+
+        return list;
+    }
+
+    /**
+     * Select the first x% of tuples of the batch in an ordered ranking.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return selected tuples in input or ranking order
+     */
+    public PairBatch execute(PairBatch batch) {
+        int numElements = (int) Math.ceil(batch.size() * this.percent);
+        int[] selection = Selection.select(batch.getDifferences(),
+                numElements, this.sorted);
+
+        return batch.select(selection, selection.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.alexpucher.batchcompare.Filter#select(java.util.Collection)
+     */
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
         int numElements = (int) Math.ceil(pairs.size() * this.percent);
+        int[] differences;
 
-        List<Pair> list = new ArrayList<Pair>(pairs);
-        Collections.sort(list);
+        if (pairs instanceof PairBatch) {
+            differences = ((PairBatch) pairs).getDifferences();
+        } else {
+            differences = new int[pairs.size()];
+            int position = 0;
+            for (Pair pair : pairs) {
+                differences[position++] = pair.getDifference();
+            }
+        }
 
-        return list.subList(0, numElements);
+        int[] selection = Selection.select(differences, numElements, false);
+        return FilterUtils.selection(selection, selection.length);
     }
 
 }
@@ -0,0 +1,214 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.filter;
+
+import java.util.Arrays;
+
+/**
+ * Selects the positions of the k lowest difference values without sorting
+ * the complete input. Ties are broken by position, so the selection equals
+ * the first k elements of a stable sort.<br />
+ * NOTE: uses a histogram pass if the observed value range is small compared
+ * to the input size and introselect otherwise. Both run in O(n).
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+final class Selection {
+
+    public static final int defaultMinHistogramRange = 1024;
+
+    private Selection() {
+        // static utility
+    }
+
+    /**
+     * Select positions of the k lowest differences.
+     * 
+     * @param differences
+     *            difference values by position
+     * @param count
+     *            number of positions selected
+     * @param sorted
+     *            return positions in ranking order instead of input order
+     * @return selected positions
+     */
+    static int[] select(int[] differences, int count, boolean sorted) {
+        int k = Math.max(0, Math.min(count, differences.length));
+
+        if (k == 0) {
+            return new int[0];
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        for (int difference : differences) {
+            min = Math.min(min, difference);
+            max = Math.max(max, difference);
+        }
+
+        long range = (long) max - (long) min + 1;
+
+        if (range <= Math.max(differences.length, defaultMinHistogramRange)) {
+            return histogramSelect(differences, k, min, (int) range, sorted);
+        }
+
+        return introSelect(differences, k, sorted);
+    }
+
+    private static int[] histogramSelect(int[] differences, int k, int min,
+            int range, boolean sorted) {
+        int[] counts = new int[range];
+
+        for (int difference : differences) {
+            counts[difference - min]++;
+        }
+
+        // NOTE: find cutoff bucket and number of ties taken from it
+        int cutoff = 0;
+        int below = 0;
+        while (below + counts[cutoff] < k) {
+            below += counts[cutoff++];
+        }
+        int ties = k - below;
+
+        int[] result = new int[k];
+
+        if (sorted) {
+            // NOTE: counting sort, turn counts into bucket offsets
+            int offset = 0;
+            for (int i = 0; i <= cutoff; i++) {
+                int bucket = counts[i];
+                counts[i] = offset;
+                offset += bucket;
+            }
+
+            int size = 0;
+            for (int i = 0; i < differences.length && size < k; i++) {
+                int bucket = differences[i] - min;
+                if (bucket < cutoff || (bucket == cutoff && ties-- > 0)) {
+                    result[counts[bucket]++] = i;
+                    size++;
+                }
+            }
+        } else {
+            int size = 0;
+            for (int i = 0; i < differences.length && size < k; i++) {
+                int bucket = differences[i] - min;
+                if (bucket < cutoff || (bucket == cutoff && ties-- > 0)) {
+                    result[size++] = i;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static int[] introSelect(int[] differences, int k, boolean sorted) {
+        long[] keys = new long[differences.length];
+
+        for (int i = 0; i < differences.length; i++) {
+            keys[i] = key(differences[i], i);
+        }
+
+        select(keys, k - 1, 2 * (64 - Long.numberOfLeadingZeros(keys.length)));
+
+        int[] result = new int[k];
+
+        if (sorted) {
+            Arrays.sort(keys, 0, k);
+            for (int i = 0; i < k; i++) {
+                result[i] = (int) keys[i];
+            }
+        } else {
+            long cutoff = keys[k - 1];
+            int size = 0;
+            for (int i = 0; i < differences.length && size < k; i++) {
+                if (key(differences[i], i) <= cutoff) {
+                    result[size++] = i;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Partition keys so that the n-th smallest key is placed at index n and
+     * all smaller keys before it. Falls back to sorting the remaining range
+     * once the partitioning depth limit is exceeded.
+     */
+    private static void select(long[] keys, int n, int depthLimit) {
+        int left = 0;
+        int right = keys.length - 1;
+
+        while (right > left) {
+            if (depthLimit-- == 0) {
+                Arrays.sort(keys, left, right + 1);
+                return;
+            }
+
+            int pivot = partition(keys, left, right, medianOfThree(keys, left,
+                    left + ((right - left) >>> 1), right));
+
+            if (pivot == n) {
+                return;
+            } else if (pivot < n) {
+                left = pivot + 1;
+            } else {
+                right = pivot - 1;
+            }
+        }
+    }
+
+    private static int medianOfThree(long[] keys, int a, int b, int c) {
+        if (keys[a] < keys[b]) {
+            return keys[b] < keys[c] ? b : (keys[a] < keys[c] ? c : a);
+        }
+        return keys[a] < keys[c] ? a : (keys[b] < keys[c] ? c : b);
+    }
+
+    private static int partition(long[] keys, int left, int right, int pivot) {
+        long value = keys[pivot];
+        swap(keys, pivot, right);
+
+        int store = left;
+        for (int i = left; i < right; i++) {
+            if (keys[i] < value) {
+                swap(keys, i, store++);
+            }
+        }
+
+        swap(keys, store, right);
+        return store;
+    }
+
+    private static void swap(long[] keys, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    /**
+     * Encode difference and position into a unique key ordered by difference
+     * first and position second.
+     */
+    private static long key(int difference, int position) {
+        return ((long) difference << 32) | position;
+    }
+
+}
@@ -16,10 +16,13 @@
 package com.alexpucher.batchcompare.processor.filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 
+import com.alexpucher.batchcompare.Filter;
 import com.alexpucher.batchcompare.Pair;
-import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
  * Filters out any element surpassing the threshold value.
@@ -27,7 +30,7 @@ import com.alexpucher.batchcompare.Processor;
  * @author Alexander Pucher
  * 
  */
-public class ThresholdFilter implements Processor {
+public class ThresholdFilter implements Filter, ThreadSafe {
 
     private int threshold;
 
@@ -56,6 +59,9 @@ public class ThresholdFilter implements Processor {
      */
     @Override
     public Collection<Pair> execute(Collection<Pair> pairs) {
+        if (pairs instanceof PairBatch) {
+            return execute((PairBatch) pairs);
+        }
 
         Collection<Pair> output = new ArrayList<Pair>();
 
@@ -68,4 +74,54 @@ public class ThresholdFilter implements Processor {
         return output;
     }
 
+    /**
+     * Select tuples of the batch not surpassing the threshold value.
+     * 
+     * @param batch
+     *            columnar base-candidate tuples
+     * @return selected tuples
+     */
+    public PairBatch execute(PairBatch batch) {
+        int[] positions = new int[batch.size()];
+        int count = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getDifference(i) <= this.threshold) {
+                positions[count++] = i;
+            }
+        }
+
+        return batch.select(positions, count);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.alexpucher.batchcompare.Filter#select(java.util.Collection)
+     */
+    @Override
+    public BitSet select(Collection<Pair> pairs) {
+        BitSet selection = new BitSet(pairs.size());
+
+        if (pairs instanceof PairBatch) {
+            PairBatch batch = (PairBatch) pairs;
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.getDifference(i) <= this.threshold) {
+                    selection.set(i);
+                }
+            }
+            return selection;
+        }
+
+        int position = 0;
+        for (Pair pair : pairs) {
+            if (pair.getDifference() <= this.threshold) {
+                selection.set(position);
+            }
+            position++;
+        }
+
+        return selection;
+    }
+
 }
@@ -0,0 +1,211 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Bounded max-heap keeping the k pairs with the lowest difference values.
+ * Pairs are ranked by difference, ties are broken by their position in the
+ * input. The result therefore equals the first k elements of a stable sort.<br />
+ * NOTE: uses O(k) memory independent of the input size.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+final class TopK {
+
+    private final int capacity;
+    private final int[] differences;
+    private final long[] positions;
+    private final Pair[] pairs;
+    private int size;
+
+    /**
+     * Create empty {@link TopK} instance with given capacity.
+     * 
+     * @param capacity
+     *            number of pairs kept
+     */
+    TopK(int capacity) {
+        super();
+        this.capacity = capacity;
+        this.differences = new int[capacity];
+        this.positions = new long[capacity];
+        this.pairs = new Pair[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Offer a pair with given input position.
+     * 
+     * @param pair
+     *            pair
+     * @param position
+     *            position in the input
+     */
+    void offer(Pair pair, long position) {
+        offer(pair, pair.getDifference(), position);
+    }
+
+    /**
+     * Merge pairs kept by another instance.
+     * 
+     * @param other
+     *            top-k of a disjoint part of the input
+     */
+    void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.pairs[i], other.differences[i], other.positions[i]);
+        }
+    }
+
+    /**
+     * Return kept pairs in ranking order.
+     * 
+     * @return ordered pairs
+     */
+    List<Pair> sorted() {
+        TopK heap = copy();
+        Pair[] result = new Pair[heap.size];
+
+        // NOTE: heap sort, extract maximum into the tail
+        for (int i = heap.size - 1; i >= 0; i--) {
+            result[i] = heap.pairs[0];
+            heap.swap(0, --heap.size);
+            heap.siftDown(0);
+        }
+
+        List<Pair> list = new ArrayList<Pair>(result.length);
+        for (Pair pair : result) {
+            list.add(pair);
+        }
+        return list;
+    }
+
+    /**
+     * Return input positions of kept pairs in ranking order.
+     * 
+     * @return ordered positions
+     */
+    long[] sortedPositions() {
+        TopK heap = copy();
+        long[] result = new long[heap.size];
+
+        for (int i = heap.size - 1; i >= 0; i--) {
+            result[i] = heap.positions[0];
+            heap.swap(0, --heap.size);
+            heap.siftDown(0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Offer a pair with given difference and input position.
+     * 
+     * @param pair
+     *            pair, may be <code>null</code> if only positions are used
+     * @param difference
+     *            difference value
+     * @param position
+     *            position in the input
+     */
+    void offer(Pair pair, int difference, long position) {
+        if (this.size < this.capacity) {
+            int i = this.size++;
+            set(i, pair, difference, position);
+            siftUp(i);
+        } else if (this.capacity > 0
+                && less(difference, position, this.differences[0],
+                        this.positions[0])) {
+            set(0, pair, difference, position);
+            siftDown(0);
+        }
+    }
+
+    private TopK copy() {
+        TopK copy = new TopK(this.capacity);
+        System.arraycopy(this.differences, 0, copy.differences, 0, this.size);
+        System.arraycopy(this.positions, 0, copy.positions, 0, this.size);
+        System.arraycopy(this.pairs, 0, copy.pairs, 0, this.size);
+        copy.size = this.size;
+        return copy;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+
+            if (!greater(i, parent)) {
+                return;
+            }
+
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+
+            if (left < this.size && greater(left, largest)) {
+                largest = left;
+            }
+            if (right < this.size && greater(right, largest)) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private boolean greater(int i, int j) {
+        return less(this.differences[j], this.positions[j],
+                this.differences[i], this.positions[i]);
+    }
+
+    private static boolean less(int difference, long position,
+            int otherDifference, long otherPosition) {
+        return difference < otherDifference
+                || (difference == otherDifference && position < otherPosition);
+    }
+
+    private void set(int i, Pair pair, int difference, long position) {
+        this.pairs[i] = pair;
+        this.differences[i] = difference;
+        this.positions[i] = position;
+    }
+
+    private void swap(int i, int j) {
+        Pair pair = this.pairs[i];
+        int difference = this.differences[i];
+        long position = this.positions[i];
+        set(i, this.pairs[j], this.differences[j], this.positions[j]);
+        set(j, pair, difference, position);
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.generator;
+
+/**
+ * Block-size statistics of a single blocking pass. Used to spot skewed blocks
+ * which dominate the amount of generated pairs.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class BlockStatistics {
+
+    private int blockCount;
+    private long pairCount;
+    private long maxBlockPairs;
+    private Object maxBlockKey;
+    private int unblockedBases;
+    private int unblockedCandidates;
+
+    BlockStatistics() {
+        super();
+    }
+
+    void addBlock(Object key, int bases, int candidates) {
+        long pairs = (long) bases * (long) candidates;
+
+        if (pairs == 0) {
+            return;
+        }
+
+        this.blockCount++;
+        this.pairCount += pairs;
+
+        if (pairs > this.maxBlockPairs) {
+            this.maxBlockPairs = pairs;
+            this.maxBlockKey = key;
+        }
+    }
+
+    void addUnblockedBase() {
+        this.unblockedBases++;
+    }
+
+    void addUnblockedCandidate() {
+        this.unblockedCandidates++;
+    }
+
+    /**
+     * Return number of blocks containing at least one base and one candidate.
+     * 
+     * @return number of non-empty blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Return number of pairs enumerated by this pass, including pairs already
+     * emitted by a previous pass.
+     * 
+     * @return number of pairs
+     */
+    public long getPairCount() {
+        return pairCount;
+    }
+
+    public long getMaxBlockPairs() {
+        return maxBlockPairs;
+    }
+
+    public Object getMaxBlockKey() {
+        return maxBlockKey;
+    }
+
+    /**
+     * Return mean number of pairs per non-empty block.
+     * 
+     * @return mean block size
+     */
+    public double getMeanBlockPairs() {
+        return (this.blockCount == 0) ? 0.0d : (double) this.pairCount
+                / (double) this.blockCount;
+    }
+
+    /**
+     * Return number of bases without key or matching block.
+     * 
+     * @return number of unblocked bases
+     */
+    public int getUnblockedBases() {
+        return unblockedBases;
+    }
+
+    /**
+     * Return number of candidates without key or matching block.
+     * 
+     * @return number of unblocked candidates
+     */
+    public int getUnblockedCandidates() {
+        return unblockedCandidates;
+    }
+
+    @Override
+    public String toString() {
+        return "blocks=" + this.blockCount + ", pairs=" + this.pairCount
+                + ", meanBlockPairs=" + getMeanBlockPairs()
+                + ", maxBlockPairs=" + this.maxBlockPairs + ", maxBlockKey="
+                + this.maxBlockKey + ", unblockedBases=" + this.unblockedBases
+                + ", unblockedCandidates=" + this.unblockedCandidates;
+    }
+
+}
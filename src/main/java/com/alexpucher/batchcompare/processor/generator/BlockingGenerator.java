@@ -0,0 +1,224 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alexpucher.batchcompare.KeyExtractor;
+import com.alexpucher.batchcompare.PairGenerator;
+import com.alexpucher.batchcompare.processor.PairBatch;
+
+/**
+ * Generates pairs of bases and candidates sharing a blocking key. Bases and
+ * candidates are hash-partitioned by key, pairs are enumerated within matching
+ * blocks only.<br />
+ * Each {@link KeyExtractor} defines a separate blocking pass. A pair is
+ * generated if base and candidate share the key of at least one pass, pairs
+ * matching in multiple passes are generated once. Use a single extractor
+ * returning a composite key to require all keys to match instead.<br />
+ * NOTE: objects without key (<code>null</code>) are not blocked in the
+ * respective pass.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class BlockingGenerator implements PairGenerator {
+
+    private List<KeyExtractor> extractors;
+    private List<BlockStatistics> statistics;
+
+    /**
+     * Create {@link BlockingGenerator} instance with given blocking key
+     * extractors.
+     * 
+     * @param extractors
+     *            one extractor per blocking pass
+     */
+    public BlockingGenerator(KeyExtractor... extractors) {
+        super();
+        if (extractors.length == 0) {
+            throw new IllegalArgumentException(
+                    "At least one key extractor required.");
+        }
+        this.extractors = new ArrayList<KeyExtractor>(Arrays.asList(extractors));
+        this.statistics = Collections.emptyList();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.PairGenerator#generate(java.util.Collection,
+     * java.util.Collection)
+     */
+    @Override
+    public PairBatch generate(Collection<?> bases, Collection<?> candidates) {
+        PairBatch batch = new PairBatch(bases, candidates);
+        Object[] baseObjects = bases.toArray();
+        Object[] candidateObjects = candidates.toArray();
+
+        int passes = this.extractors.size();
+        Object[][] baseKeys = new Object[passes][];
+        Object[][] candidateKeys = new Object[passes][];
+        List<BlockStatistics> statistics = new ArrayList<BlockStatistics>(
+                passes);
+
+        for (int pass = 0; pass < passes; pass++) {
+            KeyExtractor extractor = this.extractors.get(pass);
+            baseKeys[pass] = extractKeys(extractor, baseObjects);
+            candidateKeys[pass] = extractKeys(extractor, candidateObjects);
+
+            BlockStatistics passStatistics = new BlockStatistics();
+            Map<Object, Block> blocks = partition(candidateKeys[pass],
+                    passStatistics);
+
+            for (int base = 0; base < baseObjects.length; base++) {
+                Object key = baseKeys[pass][base];
+                Block block = (key == null) ? null : blocks.get(key);
+
+                if (block == null) {
+                    passStatistics.addUnblockedBase();
+                    continue;
+                }
+
+                block.bases++;
+
+                for (int i = 0; i < block.count; i++) {
+                    int candidate = block.candidates[i];
+
+                    if (!matchedBefore(pass, base, candidate, baseKeys,
+                            candidateKeys)) {
+                        batch.append(base, candidate);
+                    }
+                }
+            }
+
+            for (Map.Entry<Object, Block> entry : blocks.entrySet()) {
+                Block block = entry.getValue();
+
+                if (block.bases == 0) {
+                    for (int i = 0; i < block.count; i++) {
+                        passStatistics.addUnblockedCandidate();
+                    }
+                }
+
+                passStatistics.addBlock(entry.getKey(), block.bases,
+                        block.count);
+            }
+
+            statistics.add(passStatistics);
+        }
+
+        this.statistics = statistics;
+
+        return batch;
+    }
+
+    /**
+     * Return block-size statistics of the last run, one entry per blocking
+     * pass.
+     * 
+     * @return pass statistics
+     */
+    public List<BlockStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    public List<KeyExtractor> getExtractors() {
+        return extractors;
+    }
+
+    public void setExtractors(List<KeyExtractor> extractors) {
+        this.extractors = extractors;
+    }
+
+    private static Object[] extractKeys(KeyExtractor extractor,
+            Object[] objects) {
+        Object[] keys = new Object[objects.length];
+
+        for (int i = 0; i < objects.length; i++) {
+            keys[i] = extractor.extractKey(objects[i]);
+        }
+
+        return keys;
+    }
+
+    private static Map<Object, Block> partition(Object[] keys,
+            BlockStatistics statistics) {
+        Map<Object, Block> blocks = new LinkedHashMap<Object, Block>();
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                statistics.addUnblockedCandidate();
+                continue;
+            }
+
+            Block block = blocks.get(keys[i]);
+
+            if (block == null) {
+                block = new Block();
+                blocks.put(keys[i], block);
+            }
+
+            block.add(i);
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Check whether the pair was already generated by a previous pass.
+     */
+    private static boolean matchedBefore(int pass, int base, int candidate,
+            Object[][] baseKeys, Object[][] candidateKeys) {
+        for (int previous = 0; previous < pass; previous++) {
+            Object key = baseKeys[previous][base];
+
+            if (key != null && key.equals(candidateKeys[previous][candidate])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Candidate positions sharing a key.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class Block {
+        private int[] candidates = new int[4];
+        private int count = 0;
+        private int bases = 0;
+
+        private void add(int candidate) {
+            if (this.count == this.candidates.length) {
+                this.candidates = Arrays.copyOf(this.candidates,
+                        this.count * 2);
+            }
+            this.candidates[this.count++] = candidate;
+        }
+    }
+
+}
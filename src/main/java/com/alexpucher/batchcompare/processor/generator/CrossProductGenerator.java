@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.generator;
+
+import java.util.Collection;
+
+import com.alexpucher.batchcompare.PairGenerator;
+import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.PairBatch;
+
+/**
+ * Generates the complete cross product of bases and candidates. Pairs are
+ * ordered by base first, candidate second.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class CrossProductGenerator implements PairGenerator {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.PairGenerator#generate(java.util.Collection,
+     * java.util.Collection)
+     */
+    @Override
+    public PairBatch generate(Collection<?> bases, Collection<?> candidates) {
+        return Generator.generateBatch(bases, candidates);
+    }
+
+}
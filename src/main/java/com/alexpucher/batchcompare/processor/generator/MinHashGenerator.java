@@ -0,0 +1,314 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.generator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.alexpucher.batchcompare.PairGenerator;
+import com.alexpucher.batchcompare.processor.PairBatch;
+
+/**
+ * Locality-sensitive hashing pair generator for map records. Computes MinHash
+ * signatures over the key set (or key=value set) of each record and splits
+ * them into bands. Bases and candidates are paired if their signatures are
+ * identical in at least one band.<br />
+ * The probability of two records with Jaccard similarity s being paired is
+ * <code>1 - (1 - s ^ rows) ^ bands</code>. More bands increase recall, more
+ * rows per band increase selectivity.<br />
+ * NOTE: signatures are computed in parallel and stored in a single
+ * <code>int[]</code> of |records| x bands x rows entries.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class MinHashGenerator implements PairGenerator {
+
+    public static final int defaultSplitSize = 256;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private int bands;
+    private int rows;
+    private boolean includeValues;
+
+    /**
+     * Create {@link MinHashGenerator} instance on record keys with given
+     * banding.
+     * 
+     * @param bands
+     *            number of bands
+     * @param rows
+     *            number of signature rows per band
+     */
+    public MinHashGenerator(int bands, int rows) {
+        this(bands, rows, false);
+    }
+
+    /**
+     * Create {@link MinHashGenerator} instance with given banding.
+     * 
+     * @param bands
+     *            number of bands
+     * @param rows
+     *            number of signature rows per band
+     * @param includeValues
+     *            hash key=value entries instead of keys only
+     */
+    public MinHashGenerator(int bands, int rows, boolean includeValues) {
+        super();
+        checkBanding(bands, rows);
+        this.bands = bands;
+        this.rows = rows;
+        this.includeValues = includeValues;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.PairGenerator#generate(java.util.Collection,
+     * java.util.Collection)
+     */
+    @Override
+    public PairBatch generate(Collection<?> bases, Collection<?> candidates) {
+        int baseCount = bases.size();
+        int candidateCount = candidates.size();
+        int[] baseSignatures = signatures(bases);
+        int[] candidateSignatures = signatures(candidates);
+
+        long[][] buckets = new long[this.bands][];
+        for (int band = 0; band < this.bands; band++) {
+            buckets[band] = buckets(candidateSignatures, candidateCount, band);
+        }
+
+        PairBatch batch = new PairBatch(bases, candidates);
+        int[] seen = new int[candidateCount];
+        int[] matches = new int[candidateCount];
+
+        for (int base = 0; base < baseCount; base++) {
+            int matchCount = 0;
+
+            for (int band = 0; band < this.bands; band++) {
+                long hash = bandHash(baseSignatures, base, band);
+                long[] bucket = buckets[band];
+                int position = Arrays.binarySearch(bucket, hash << 32);
+                position = (position < 0) ? -position - 1 : position;
+
+                for (; position < bucket.length
+                        && (bucket[position] >>> 32) == hash; position++) {
+                    int candidate = (int) bucket[position];
+
+                    // NOTE: stamp with base + 1, array starts zeroed
+                    if (seen[candidate] != base + 1) {
+                        seen[candidate] = base + 1;
+                        matches[matchCount++] = candidate;
+                    }
+                }
+            }
+
+            Arrays.sort(matches, 0, matchCount);
+            for (int i = 0; i < matchCount; i++) {
+                batch.append(base, matches[i]);
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Compute MinHash signatures of the given map records in parallel.
+     * Signature of record i is stored at [i x length, (i + 1) x length) with
+     * length = bands x rows.
+     * 
+     * @param records
+     *            map records
+     * @return flat signature array
+     */
+    public int[] signatures(Collection<?> records) {
+        Object[] objects = records.toArray();
+        long length = (long) objects.length * getSignatureLength();
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Signatures too large: "
+                    + length + " entries");
+        }
+
+        int[] signatures = new int[(int) length];
+
+        ForkJoinPool.commonPool().invoke(
+                new SignatureAction(objects, signatures, 0, objects.length));
+
+        return signatures;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public void setBands(int bands) {
+        checkBanding(bands, this.rows);
+        this.bands = bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        checkBanding(this.bands, rows);
+        this.rows = rows;
+    }
+
+    public boolean isIncludeValues() {
+        return includeValues;
+    }
+
+    public void setIncludeValues(boolean includeValues) {
+        this.includeValues = includeValues;
+    }
+
+    public int getSignatureLength() {
+        return this.bands * this.rows;
+    }
+
+    /**
+     * Validate banding. Bands and rows must be positive, their product must
+     * fit into an int.
+     */
+    private static void checkBanding(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException(
+                    "Bands and rows must be positive.");
+        }
+        if ((long) bands * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Signature too long: " + bands
+                    + " bands x " + rows + " rows");
+        }
+    }
+
+    /**
+     * Return sorted bucket entries (band hash << 32 | record) of a band.
+     */
+    private long[] buckets(int[] signatures, int count, int band) {
+        long[] bucket = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            bucket[i] = (bandHash(signatures, i, band) << 32) | i;
+        }
+
+        Arrays.sort(bucket);
+        return bucket;
+    }
+
+    /**
+     * Return 32 bit hash of a band of a record signature.
+     */
+    private long bandHash(int[] signatures, int record, int band) {
+        int offset = record * getSignatureLength() + band * this.rows;
+        int hash = 1;
+
+        for (int row = 0; row < this.rows; row++) {
+            hash = 31 * hash + signatures[offset + row];
+        }
+
+        return hash & 0xFFFFFFFFL;
+    }
+
+    private void signature(Object record, int[] signatures, int offset) {
+        int length = getSignatureLength();
+        Arrays.fill(signatures, offset, offset + length, Integer.MAX_VALUE);
+
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) record).entrySet()) {
+            int feature = hashCode(entry.getKey());
+
+            if (this.includeValues) {
+                feature = 31 * feature + hashCode(entry.getValue());
+            }
+
+            for (int i = 0; i < length; i++) {
+                int value = mix(feature, i);
+
+                if (value < signatures[offset + i]) {
+                    signatures[offset + i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash function family. Finalizer of MurmurHash3 applied to the feature
+     * combined with a per-function seed.
+     */
+    private static int mix(int feature, int function) {
+        long h = (feature & 0xFFFFFFFFL) ^ ((function + 1) * SEED);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int hashCode(Object object) {
+        return (object == null) ? 0 : object.hashCode();
+    }
+
+    /**
+     * Computes signatures of a range of records, splitting the range until it
+     * falls below {@link MinHashGenerator#defaultSplitSize}.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private class SignatureAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] records;
+        private final int[] signatures;
+        private final int from;
+        private final int to;
+
+        private SignatureAction(Object[] records, int[] signatures, int from,
+                int to) {
+            super();
+            this.records = records;
+            this.signatures = signatures;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= defaultSplitSize) {
+                for (int i = this.from; i < this.to; i++) {
+                    signature(this.records[i], this.signatures, i
+                            * getSignatureLength());
+                }
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new SignatureAction(this.records, this.signatures,
+                    this.from, middle), new SignatureAction(this.records,
+                    this.signatures, middle, this.to));
+        }
+    }
+
+}
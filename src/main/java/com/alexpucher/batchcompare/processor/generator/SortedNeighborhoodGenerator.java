@@ -0,0 +1,221 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import com.alexpucher.batchcompare.KeyExtractor;
+import com.alexpucher.batchcompare.PairGenerator;
+import com.alexpucher.batchcompare.processor.PairBatch;
+
+/**
+ * Sorted-neighborhood pair generator. Candidates are sorted by key, each base
+ * is paired with the candidates inside a window of fixed width around its own
+ * position in the candidate ordering. Generates O(|bases| x width) pairs.<br />
+ * Each {@link KeyExtractor} defines a separate sorting pass. Results of all
+ * passes are merged and duplicate pairs removed.<br />
+ * NOTE: keys must implement {@link Comparable}. Objects without key (
+ * <code>null</code>) are skipped in the respective pass.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class SortedNeighborhoodGenerator implements PairGenerator {
+
+    private List<KeyExtractor> extractors;
+    private int window;
+
+    /**
+     * Create {@link SortedNeighborhoodGenerator} instance with given window
+     * width and sort key extractors.
+     * 
+     * @param window
+     *            number of candidates paired with each base
+     * @param extractors
+     *            one extractor per sorting pass
+     */
+    public SortedNeighborhoodGenerator(int window, KeyExtractor... extractors) {
+        super();
+        if (extractors.length == 0) {
+            throw new IllegalArgumentException(
+                    "At least one key extractor required.");
+        }
+        setWindow(window);
+        this.extractors = new ArrayList<KeyExtractor>(Arrays.asList(extractors));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.alexpucher.batchcompare.PairGenerator#generate(java.util.Collection,
+     * java.util.Collection)
+     */
+    @Override
+    public PairBatch generate(Collection<?> bases, Collection<?> candidates) {
+        Object[] baseObjects = bases.toArray();
+        Object[] candidateObjects = candidates.toArray();
+
+        // NOTE: pairs encoded as (base << 32 | candidate) for merging passes
+        long[] pairs = new long[0];
+        int pairCount = 0;
+
+        for (KeyExtractor extractor : this.extractors) {
+            final Comparable<Object>[] keys = extractKeys(extractor,
+                    candidateObjects);
+            Integer[] order = sortedPositions(keys);
+
+            if (order.length == 0) {
+                continue;
+            }
+
+            Comparable<Object>[] sortedKeys = newKeys(order.length);
+            for (int i = 0; i < order.length; i++) {
+                sortedKeys[i] = keys[order[i]];
+            }
+
+            int width = Math.min(this.window, order.length);
+            pairs = ensureCapacity(pairs, pairCount
+                    + (long) baseObjects.length * width);
+
+            for (int base = 0; base < baseObjects.length; base++) {
+                Comparable<Object> key = asComparable(extractor
+                        .extractKey(baseObjects[base]));
+
+                if (key == null) {
+                    continue;
+                }
+
+                int position = insertionPoint(sortedKeys, key);
+                int from = Math.max(0, Math.min(position - width / 2,
+                        order.length - width));
+
+                for (int i = from; i < from + width; i++) {
+                    pairs[pairCount++] = ((long) base << 32) | order[i];
+                }
+            }
+        }
+
+        Arrays.sort(pairs, 0, pairCount);
+
+        PairBatch batch = new PairBatch(bases, candidates, pairCount);
+        for (int i = 0; i < pairCount; i++) {
+            if (i > 0 && pairs[i] == pairs[i - 1]) {
+                continue;
+            }
+            batch.append((int) (pairs[i] >>> 32), (int) pairs[i]);
+        }
+
+        return batch;
+    }
+
+    public List<KeyExtractor> getExtractors() {
+        return extractors;
+    }
+
+    public void setExtractors(List<KeyExtractor> extractors) {
+        this.extractors = extractors;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        this.window = window;
+    }
+
+    private static Comparable<Object>[] extractKeys(KeyExtractor extractor,
+            Object[] objects) {
+        Comparable<Object>[] keys = newKeys(objects.length);
+
+        for (int i = 0; i < objects.length; i++) {
+            keys[i] = asComparable(extractor.extractKey(objects[i]));
+        }
+
+        return keys;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Comparable<Object>[] newKeys(int length) {
+        return new Comparable[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> asComparable(Object key) {
+        return (Comparable<Object>) key;
+    }
+
+    /**
+     * Return positions of objects with key, sorted by key. Sorting is stable.
+     */
+    private static Integer[] sortedPositions(final Comparable<Object>[] keys) {
+        List<Integer> positions = new ArrayList<Integer>(keys.length);
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                positions.add(i);
+            }
+        }
+
+        Integer[] order = positions.toArray(new Integer[positions.size()]);
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return keys[o1].compareTo(keys[o2]);
+            }
+        });
+
+        return order;
+    }
+
+    /**
+     * Return position of the first key not less than the given key.
+     */
+    private static int insertionPoint(Comparable<Object>[] sortedKeys,
+            Comparable<Object> key) {
+        int low = 0;
+        int high = sortedKeys.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (sortedKeys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static long[] ensureCapacity(long[] pairs, long capacity) {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many pairs: " + capacity);
+        }
+        return (capacity <= pairs.length) ? pairs : Arrays.copyOf(pairs,
+                (int) capacity);
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.identity;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.alexpucher.batchcompare.PairIdentity;
+
+/**
+ * Random pair identity. Useful if pairs generated by independent processes are
+ * merged later on. Uses a thread-local pseudo random generator instead of
+ * {@link java.security.SecureRandom}.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class RandomIdentity implements PairIdentity {
+
+    @Override
+    public long nextId() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    @Override
+    public long nextIds(long count) {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.identity;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alexpucher.batchcompare.PairIdentity;
+
+/**
+ * Sequential pair identity based on a shared counter. Each thread reserves a
+ * stripe of consecutive identifiers at once and hands them out without
+ * further synchronization.<br />
+ * NOTE: identifiers are unique per {@link SequentialIdentity} instance only.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class SequentialIdentity implements PairIdentity {
+
+    public static final int defaultStripeSize = 1024;
+
+    private final AtomicLong sequence;
+    private final int stripeSize;
+    private final ThreadLocal<long[]> stripes;
+
+    /**
+     * Create {@link SequentialIdentity} instance with default stripe size.
+     */
+    public SequentialIdentity() {
+        this(defaultStripeSize);
+    }
+
+    /**
+     * Create {@link SequentialIdentity} instance with given stripe size.
+     * 
+     * @param stripeSize
+     *            number of identifiers reserved per thread at once
+     */
+    public SequentialIdentity(int stripeSize) {
+        super();
+        if (stripeSize < 1) {
+            throw new IllegalArgumentException("Stripe size must be positive.");
+        }
+        this.sequence = new AtomicLong();
+        this.stripeSize = stripeSize;
+        this.stripes = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                // NOTE: [next, limit), empty until first use
+                return new long[2];
+            }
+        };
+    }
+
+    @Override
+    public long nextId() {
+        long[] stripe = this.stripes.get();
+
+        if (stripe[0] == stripe[1]) {
+            stripe[0] = this.sequence.getAndAdd(this.stripeSize);
+            stripe[1] = stripe[0] + this.stripeSize;
+        }
+
+        return stripe[0]++;
+    }
+
+    @Override
+    public long nextIds(long count) {
+        return this.sequence.getAndAdd(count);
+    }
+
+    public int getStripeSize() {
+        return stripeSize;
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.operator;
+
+import java.util.Map.Entry;
+
+/**
+ * Skeleton implementation of map-entry level Operator with key-equality
+ * semantics. Entries with different keys always differ by the key penalty,
+ * entries with equal keys are compared by value. Override
+ * {@link AbstractMapKeyEntryOperator#valueDifference(Object, Object)} to
+ * generate a difference value for matching keys.<br />
+ * NOTE: {@link MapOperator} looks up matching candidate entries by key
+ * directly instead of comparing each base entry to all candidate entries.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public abstract class AbstractMapKeyEntryOperator extends
+        AbstractMapEntryOperator {
+
+    @Override
+    public final int entryDifference(Entry<?, ?> base, Entry<?, ?> candidate) {
+        if (!base.getKey().equals(candidate.getKey())) {
+            return getKeyPenalty();
+        }
+
+        return valueDifference(base.getValue(), candidate.getValue());
+    }
+
+    /**
+     * Return difference value of entries with different keys.
+     * 
+     * @return key penalty
+     */
+    public int getKeyPenalty() {
+        return MapOperator.defaultKeyPenalty;
+    }
+
+    /**
+     * Determine difference value of the values of map entries with equal
+     * keys.
+     * 
+     * @param base
+     *            base entry value
+     * @param candidate
+     *            candidate entry value
+     * @return difference value
+     */
+    public abstract int valueDifference(Object base, Object candidate);
+
+    /**
+     * Determine difference value of the values of map entries with equal keys
+     * given their precomputed hash codes. Used when scoring
+     * {@link CompiledMap} instances. Override to skip comparison of values
+     * with different hash codes.
+     * 
+     * @param base
+     *            base entry value
+     * @param baseHash
+     *            hash code of base entry value
+     * @param candidate
+     *            candidate entry value
+     * @param candidateHash
+     *            hash code of candidate entry value
+     * @return difference value
+     */
+    public int valueDifference(Object base, int baseHash, Object candidate,
+            int candidateHash) {
+        return valueDifference(base, candidate);
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.operator;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compact, read-only form of a map prepared by a {@link MapCompiler}. Keys are
+ * interned to int ids, entries are sorted by key id and stored in parallel
+ * arrays together with precomputed value hashes. Two compiled maps of the same
+ * compiler can be joined on their key ids without hashing any keys.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class CompiledMap {
+
+    private final int[] keyIds;
+    private final Object[] values;
+    private final int[] valueHashes;
+    private final Map.Entry<?, ?>[] entries;
+
+    CompiledMap(Map<?, ?> map, MapCompiler compiler) {
+        super();
+        int size = map.size();
+        long[] order = new long[size];
+        Map.Entry<?, ?>[] source = new Map.Entry<?, ?>[size];
+
+        int count = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            source[count] = entry;
+            order[count] = ((long) compiler.intern(entry.getKey()) << 32)
+                    | count;
+            count++;
+        }
+
+        Arrays.sort(order);
+
+        this.keyIds = new int[size];
+        this.values = new Object[size];
+        this.valueHashes = new int[size];
+        this.entries = new Map.Entry<?, ?>[size];
+
+        for (int i = 0; i < size; i++) {
+            Map.Entry<?, ?> entry = source[(int) order[i]];
+            Object value = entry.getValue();
+
+            this.keyIds[i] = (int) (order[i] >>> 32);
+            this.values[i] = value;
+            this.valueHashes[i] = (value == null) ? 0 : value.hashCode();
+            this.entries[i] = entry;
+        }
+    }
+
+    /**
+     * Return number of entries.
+     * 
+     * @return map size
+     */
+    public int size() {
+        return this.keyIds.length;
+    }
+
+    /**
+     * Return position of the entry with given key id.
+     * 
+     * @param keyId
+     *            interned key id
+     * @return entry position or a negative value if the key is not contained
+     */
+    public int indexOf(int keyId) {
+        return Arrays.binarySearch(this.keyIds, keyId);
+    }
+
+    public int getKeyId(int position) {
+        return this.keyIds[position];
+    }
+
+    public Object getValue(int position) {
+        return this.values[position];
+    }
+
+    public int getValueHash(int position) {
+        return this.valueHashes[position];
+    }
+
+    public Map.Entry<?, ?> getEntry(int position) {
+        return this.entries[position];
+    }
+
+}
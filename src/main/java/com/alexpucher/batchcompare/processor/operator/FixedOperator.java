@@ -15,8 +15,10 @@
  */
 package com.alexpucher.batchcompare.processor.operator;
 
+import com.alexpucher.batchcompare.ElementWise;
 import com.alexpucher.batchcompare.Operator;
 import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.ThreadSafe;
 
 /**
  * Set the difference value of the pair to a fixed value.
@@ -24,7 +26,7 @@ import com.alexpucher.batchcompare.Pair;
  * @author Alexander Pucher
  * 
  */
-public class FixedOperator implements Operator {
+public class FixedOperator implements Operator, ElementWise, ThreadSafe {
     private int difference;
 
     /**
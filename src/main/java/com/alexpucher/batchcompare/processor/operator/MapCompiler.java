@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.processor.operator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles maps into {@link CompiledMap} form and caches the result. Maps are
+ * cached by identity in a bounded least-recently-used cache, so a candidate
+ * compared against many bases is compiled once only. Keys are interned into a
+ * dictionary shared by all maps of the compiler.<br />
+ * NOTE: cached maps must not be modified. The key dictionary is not bounded.<br />
+ * NOTE: this class is thread-safe.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class MapCompiler {
+
+    public static final int defaultCapacity = 1024;
+
+    private static final Object NULL_KEY = new Object();
+
+    private final ConcurrentMap<Object, Integer> dictionary;
+    private final AtomicInteger nextKeyId;
+    private final Map<IdentityKey, CompiledMap> cache;
+    private final int capacity;
+
+    /**
+     * Create {@link MapCompiler} instance with default cache capacity.
+     */
+    public MapCompiler() {
+        this(defaultCapacity);
+    }
+
+    /**
+     * Create {@link MapCompiler} instance with given cache capacity.
+     * 
+     * @param capacity
+     *            maximum number of cached maps
+     */
+    public MapCompiler(final int capacity) {
+        super();
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.dictionary = new ConcurrentHashMap<Object, Integer>();
+        this.nextKeyId = new AtomicInteger();
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<IdentityKey, CompiledMap>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<IdentityKey, CompiledMap> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return compiled form of the given map, compiling it if it is not cached
+     * yet.
+     * 
+     * @param map
+     *            source map
+     * @return compiled map
+     */
+    public CompiledMap compile(Map<?, ?> map) {
+        IdentityKey key = new IdentityKey(map);
+        CompiledMap compiled;
+
+        synchronized (this.cache) {
+            compiled = this.cache.get(key);
+        }
+
+        if (compiled == null) {
+            compiled = new CompiledMap(map, this);
+
+            synchronized (this.cache) {
+                this.cache.put(key, compiled);
+            }
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Return interned id of given key. Equal keys share the same id.
+     * 
+     * @param key
+     *            map key
+     * @return key id
+     */
+    public int intern(Object key) {
+        if (key == null) {
+            key = NULL_KEY;
+        }
+
+        Integer id = this.dictionary.get(key);
+
+        if (id == null) {
+            Integer newId = this.nextKeyId.getAndIncrement();
+            id = this.dictionary.putIfAbsent(key, newId);
+
+            if (id == null) {
+                id = newId;
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Remove all compiled maps from the cache.
+     */
+    public void clear() {
+        synchronized (this.cache) {
+            this.cache.clear();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Identity-based cache key.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class IdentityKey {
+        private final Object object;
+
+        private IdentityKey(Object object) {
+            super();
+            this.object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.object);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof IdentityKey)
+                    && ((IdentityKey) obj).object == this.object;
+        }
+    }
+
+}
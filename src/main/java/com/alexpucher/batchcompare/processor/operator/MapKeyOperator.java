@@ -15,7 +15,7 @@
  */
 package com.alexpucher.batchcompare.processor.operator;
 
-import java.util.Map.Entry;
+import com.alexpucher.batchcompare.ThreadSafe;
 
 /**
  * Determines distance of map entries based on a difference in keys. Difference
@@ -24,11 +24,12 @@ import java.util.Map.Entry;
  * @author Alexander Pucher
  * 
  */
-public class MapKeyOperator extends AbstractMapEntryOperator {
+public class MapKeyOperator extends AbstractMapKeyEntryOperator implements
+        ThreadSafe {
 
     @Override
-    public int entryDifference(Entry<?, ?> base, Entry<?, ?> candidate) {
-        return (base.getKey().equals(candidate.getKey())) ? 0 : 100;
+    public int valueDifference(Object base, Object candidate) {
+        return 0;
     }
 
 }
@@ -15,7 +15,7 @@
  */
 package com.alexpucher.batchcompare.processor.operator;
 
-import java.util.Map.Entry;
+import com.alexpucher.batchcompare.ThreadSafe;
 
 /**
  * Determines distance of map entries based on a difference in keys and values.
@@ -26,19 +26,26 @@ import java.util.Map.Entry;
  * @author Alexander Pucher
  * 
  */
-public class MapKeyValueOperator extends AbstractMapEntryOperator {
+public class MapKeyValueOperator extends AbstractMapKeyEntryOperator
+        implements ThreadSafe {
 
     @Override
-    public int entryDifference(Entry<?, ?> base, Entry<?, ?> candidate) {
-        if (!base.getKey().equals(candidate.getKey())) {
-            return MapOperator.defaultKeyPenalty;
+    public int valueDifference(Object base, Object candidate) {
+        if (base == null ? candidate != null : !base.equals(candidate)) {
+            return MapOperator.defaultValuePenalty;
         }
 
-        if (!base.getValue().equals(candidate.getValue())) {
+        return 0;
+    }
+
+    @Override
+    public int valueDifference(Object base, int baseHash, Object candidate,
+            int candidateHash) {
+        if (baseHash != candidateHash) {
             return MapOperator.defaultValuePenalty;
         }
 
-        return 0;
+        return valueDifference(base, candidate);
     }
 
 }
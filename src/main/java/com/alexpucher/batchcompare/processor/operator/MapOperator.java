@@ -15,12 +15,15 @@
  */
 package com.alexpucher.batchcompare.processor.operator;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
 import com.alexpucher.batchcompare.Operator;
 import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.monitor.Instrumentation;
 import com.alexpucher.batchcompare.processor.BatchOperator;
 import com.alexpucher.batchcompare.processor.Generator;
 import com.alexpucher.batchcompare.task.ProcessorTask;
@@ -31,17 +34,39 @@ import com.alexpucher.batchcompare.task.TaskUtils;
  * Unwraps map container by running a task for each base map entry on the cross
  * product of this entry with the candidate map entries. The total difference
  * equals the sum of the lowest result of each task run.<br />
- * <code>difference = SUM(i = [0, N]: min(task(base_entry[i] x candidate_entries))</code>
+ * <code>difference = SUM(i = [0, N]: min(task(base_entry[i] x candidate_entries))</code><br />
+ * NOTE: with an {@link AbstractMapKeyEntryOperator} as default task, matching
+ * candidate entries are looked up by key in O(|base|).<br />
+ * NOTE: with a {@link MapCompiler} set, the default task is evaluated on
+ * cached {@link CompiledMap} forms of base and candidate maps.<br />
+ * NOTE: the default task is evaluated directly on the entry sets without
+ * creating intermediate pairs, custom tasks are shared and executed
+ * reentrantly via {@link Task#execute(com.alexpucher.batchcompare.task.TaskContext)}.
+ * Entry operators are expected to be stateless.<br />
+ * NOTE: if {@link Instrumentation} is enabled, entry-set comparisons by the
+ * default task are accumulated per entry operator with the number of compared
+ * entry pairs as input and the number of base entries as output, and reported
+ * once per enclosing batch.
  * 
  * @author Alexander Pucher
  * 
  */
-public class MapOperator implements Operator {
+public class MapOperator implements Operator, ThreadSafe {
     
     public static final int defaultKeyPenalty = 100;
     public static final int defaultValuePenalty = 1;
 
+    private static final ThreadLocal<Map.Entry<?, ?>[][]> entryBuffers =
+            new ThreadLocal<Map.Entry<?, ?>[][]>() {
+                @Override
+                protected Map.Entry<?, ?>[][] initialValue() {
+                    return new Map.Entry<?, ?>[1][];
+                }
+            };
+
     private Task task;
+    private AbstractMapEntryOperator entryOperator;
+    private MapCompiler compiler;
 
     /**
      * Create {@link MapOperator} instance with given task to be run on
@@ -64,7 +89,7 @@ public class MapOperator implements Operator {
      */
     public MapOperator(AbstractMapEntryOperator entryOperator) {
         super();
-        this.task = new DefaultTask(entryOperator);
+        setTaskDefault(entryOperator);
     }
 
     @Override
@@ -82,30 +107,69 @@ public class MapOperator implements Operator {
             return pair;
         }
 
-        int diffValue = 0;
+        AbstractMapEntryOperator entryOperator = this.entryOperator;
 
-        for (Map.Entry<?, ?> entry : base.entrySet()) {
-            Collection<Pair> data = Generator.generate(entry, candidate
-                    .entrySet());
-            Collection<Pair> results = TaskUtils.runTask(this.task, data);
+        if (entryOperator == null) {
+            pair.setDifference(mapDifference(base, candidate, this.task));
+            return pair;
+        }
 
-            if (!results.isEmpty()) {
-                Pair min = Collections.min(results);
-                diffValue += min.getDifference();
-            }
+        if (!Instrumentation.isEnabled()) {
+            pair.setDifference(entryDifference(base, candidate, entryOperator));
+            return pair;
         }
 
-        pair.setDifference(diffValue);
+        long start = System.nanoTime();
+        pair.setDifference(entryDifference(base, candidate, entryOperator));
+        Instrumentation.accumulate(entryOperator, (long) base.size()
+                * candidate.size(), base.size(), System.nanoTime() - start);
 
         return pair;
     }
 
+    /**
+     * Sum up minimum entry differences of all base entries using the fastest
+     * strategy available for the entry operator.
+     */
+    private int entryDifference(Map<?, ?> base, Map<?, ?> candidate,
+            AbstractMapEntryOperator entryOperator) {
+        MapCompiler compiler = this.compiler;
+
+        if (compiler != null) {
+            return compiledDifference(compiler.compile(base),
+                    compiler.compile(candidate), entryOperator);
+        }
+
+        if (entryOperator instanceof AbstractMapKeyEntryOperator) {
+            return keyDifference(base, candidate,
+                    (AbstractMapKeyEntryOperator) entryOperator);
+        }
+
+        return scanDifference(base, candidate, entryOperator);
+    }
+
     public Task getTask() {
         return task;
     }
 
     public void setTask(Task task) {
         this.task = task;
+        this.entryOperator = null;
+    }
+
+    public MapCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Set compiler used to prepare maps for the default task. Use
+     * <code>null</code> to score maps directly.
+     * 
+     * @param compiler
+     *            map compiler
+     */
+    public void setCompiler(MapCompiler compiler) {
+        this.compiler = compiler;
     }
 
     /**
@@ -113,6 +177,167 @@ public class MapOperator implements Operator {
      */
     public void setTaskDefault(AbstractMapEntryOperator entryOperator) {
         this.task = new DefaultTask(entryOperator);
+        this.entryOperator = entryOperator;
+    }
+
+    /**
+     * Sum up minimum entry task results of all base entries.<br />
+     * NOTE: tasks are executed reentrantly, legacy tasks serialize themselves.
+     */
+    private static int mapDifference(Map<?, ?> base, Map<?, ?> candidate,
+            Task task) {
+        int diffValue = 0;
+
+        for (Map.Entry<?, ?> entry : base.entrySet()) {
+            Collection<Pair> data = Generator.generate(entry, candidate
+                    .entrySet());
+            Collection<Pair> results = TaskUtils.runTask(task, data);
+
+            if (!results.isEmpty()) {
+                Pair min = Collections.min(results);
+                diffValue += min.getDifference();
+            }
+        }
+
+        return diffValue;
+    }
+
+    /**
+     * Sum up minimum entry differences of all base entries on compiled maps.
+     * Key-equality operators join both maps on their sorted key ids, other
+     * operators compare each base entry to all candidate entries.<br />
+     * NOTE: requires non-empty maps compiled by the same compiler.
+     */
+    private static int compiledDifference(CompiledMap base,
+            CompiledMap candidate, AbstractMapEntryOperator entryOperator) {
+        int diffValue = 0;
+
+        if (entryOperator instanceof AbstractMapKeyEntryOperator) {
+            AbstractMapKeyEntryOperator keyOperator =
+                    (AbstractMapKeyEntryOperator) entryOperator;
+            int keyPenalty = keyOperator.getKeyPenalty();
+            boolean otherKeys = candidate.size() > 1;
+            int position = 0;
+
+            for (int i = 0; i < base.size(); i++) {
+                int keyId = base.getKeyId(i);
+
+                while (position < candidate.size()
+                        && candidate.getKeyId(position) < keyId) {
+                    position++;
+                }
+
+                if (position == candidate.size()
+                        || candidate.getKeyId(position) != keyId) {
+                    diffValue += keyPenalty;
+                    continue;
+                }
+
+                int difference = keyOperator.valueDifference(base.getValue(i),
+                        base.getValueHash(i), candidate.getValue(position),
+                        candidate.getValueHash(position));
+                diffValue += otherKeys ? Math.min(difference, keyPenalty)
+                        : difference;
+            }
+
+            return diffValue;
+        }
+
+        for (int i = 0; i < base.size(); i++) {
+            Map.Entry<?, ?> entry = base.getEntry(i);
+            int min = Integer.MAX_VALUE;
+
+            for (int j = 0; j < candidate.size(); j++) {
+                int difference = entryOperator.entryDifference(entry,
+                        candidate.getEntry(j));
+
+                if (difference < min) {
+                    min = difference;
+                }
+            }
+
+            diffValue += min;
+        }
+
+        return diffValue;
+    }
+
+    /**
+     * Sum up minimum entry differences of all base entries by comparing each
+     * base entry to all candidate entries. Equivalent to running the default
+     * task, but without allocating pairs, collections or tasks.<br />
+     * NOTE: candidate entries are copied to a per-thread buffer once per
+     * invocation. Nested invocations on the same thread use a new buffer.
+     */
+    private static int scanDifference(Map<?, ?> base, Map<?, ?> candidate,
+            AbstractMapEntryOperator entryOperator) {
+        Map.Entry<?, ?>[][] holder = entryBuffers.get();
+        Map.Entry<?, ?>[] entries = holder[0];
+        holder[0] = null;
+
+        if (entries == null || entries.length < candidate.size()) {
+            entries = new Map.Entry<?, ?>[Math.max(16, candidate.size())];
+        }
+
+        int count = 0;
+        for (Map.Entry<?, ?> entry : candidate.entrySet()) {
+            entries[count++] = entry;
+        }
+
+        try {
+            int diffValue = 0;
+
+            for (Map.Entry<?, ?> entry : base.entrySet()) {
+                int min = Integer.MAX_VALUE;
+
+                for (int i = 0; i < count; i++) {
+                    int difference = entryOperator.entryDifference(entry,
+                            entries[i]);
+
+                    if (difference < min) {
+                        min = difference;
+                    }
+                }
+
+                diffValue += min;
+            }
+
+            return diffValue;
+
+        } finally {
+            // NOTE: do not retain candidate entries
+            Arrays.fill(entries, 0, count, null);
+            holder[0] = entries;
+        }
+    }
+
+    /**
+     * Sum up minimum entry differences of all base entries by looking up
+     * candidate entries with equal key. Equivalent to the minimum over all
+     * candidate entries as any other entry differs by the key penalty.<br />
+     * NOTE: requires a non-empty candidate map with equals-based key lookup.
+     */
+    private static int keyDifference(Map<?, ?> base, Map<?, ?> candidate,
+            AbstractMapKeyEntryOperator entryOperator) {
+        int keyPenalty = entryOperator.getKeyPenalty();
+        boolean otherKeys = candidate.size() > 1;
+        int diffValue = 0;
+
+        for (Map.Entry<?, ?> entry : base.entrySet()) {
+            Object value = candidate.get(entry.getKey());
+
+            if (value == null && !candidate.containsKey(entry.getKey())) {
+                diffValue += keyPenalty;
+                continue;
+            }
+
+            int difference = entryOperator.valueDifference(entry.getValue(),
+                    value);
+            diffValue += otherKeys ? Math.min(difference, keyPenalty)
+                    : difference;
+        }
+
+        return diffValue;
     }
 
     /**
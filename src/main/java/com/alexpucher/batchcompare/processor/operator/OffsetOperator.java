@@ -15,8 +15,10 @@
  */
 package com.alexpucher.batchcompare.processor.operator;
 
+import com.alexpucher.batchcompare.ElementWise;
 import com.alexpucher.batchcompare.Operator;
 import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.ThreadSafe;
 
 /**
  * Offsets the difference value of the pair by a fixed value.
@@ -24,7 +26,7 @@ import com.alexpucher.batchcompare.Pair;
  * @author Alexander Pucher
  * 
  */
-public class OffsetOperator implements Operator {
+public class OffsetOperator implements Operator, ElementWise, ThreadSafe {
     int offset;
 
     /**
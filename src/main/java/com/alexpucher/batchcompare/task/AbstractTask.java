@@ -23,7 +23,11 @@ import com.alexpucher.batchcompare.Pair;
  * Skeleton implementation of Task interface. Handles parent relation and
  * external flow of data using {@link Task#pull()} and
  * {@link Task#push(Collection)}.<br />
- * NOTE: Implementation of {@link AbstractTask#executeImpl()} required.
+ * NOTE: Implementation of either {@link AbstractTask#executeImpl()} or
+ * {@link AbstractTask#execute(TaskContext)} required. Tasks implementing
+ * {@link AbstractTask#executeImpl()} only are executed by one thread at a
+ * time, override {@link AbstractTask#execute(TaskContext)} for reentrant
+ * tasks.
  * 
  * @author Alexander Pucher
  * 
@@ -40,9 +44,12 @@ public abstract class AbstractTask implements Task {
     /**
      * Execute internal Task logic. Use {@link AbstractTask#data} to access
      * local data. The field contents are used as output after completion of the
-     * invocation.
+     * invocation.<br />
+     * NOTE: the default implementation leaves the data set unchanged.
      */
-    protected abstract void executeImpl();
+    protected void executeImpl() {
+        // left blank
+    }
 
     /*
      * (non-Javadoc)
@@ -55,13 +62,36 @@ public abstract class AbstractTask implements Task {
             this.data = this.parent.pull();
         }
 
-        this.executeImpl();
+        TaskContext context = new TaskContext(this.data);
+        TaskUtils.execute(this, context);
+        this.data = context.getData();
 
         if (this.parent != null) {
             this.parent.push(this.data);
         }
     }
 
+    /**
+     * {@inheritDoc}<br />
+     * NOTE: the default implementation bridges to
+     * {@link AbstractTask#executeImpl()} on {@link AbstractTask#data} and
+     * holds the task's monitor while doing so.
+     */
+    @Override
+    public void execute(TaskContext context) {
+        synchronized (this) {
+            Collection<Pair> previous = this.data;
+            this.data = context.getData();
+
+            try {
+                this.executeImpl();
+                context.setData(this.data);
+            } finally {
+                this.data = previous;
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -15,23 +15,53 @@
  */
 package com.alexpucher.batchcompare.task;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.processor.IdIndex;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
  * Task wrapper that runs multiple Tasks on the same input set and merges the
- * results by adding scores on a per-tuple basis.
+ * results by adding scores on a per-tuple basis.<br />
+ * NOTE: the input is converted to a {@link PairBatch} once and each task works
+ * on a copy sharing all columns but the differences. If the input is not a
+ * batch, the copy is passed as a mutable list of pair views, so tasks written
+ * against list input may keep adding and removing pairs. The list is
+ * materialised only if a task modifies the list itself. Results are
+ * correlated with the input by pair id, each task accumulates its scores into
+ * a private array indexed by tuple ordinal and the arrays are reduced after
+ * all tasks complete. If an executor is set, the tasks run
+ * concurrently.<br />
+ * NOTE: if a cutoff is set, tasks run as a cascade instead. Tuples whose
+ * accumulated difference exceeds the cutoff are not passed to later tasks and
+ * keep their partial score, which is a lower bound for non-negative
+ * differences. Optionally, tasks are ordered by their observed cost per
+ * tuple.
  * 
  * @author Alexander Pucher
  * 
  */
 public class AggregatorTask extends AbstractTask {
 
+    public static final int NO_CUTOFF = Integer.MAX_VALUE;
+
     private Collection<Task> tasks;
+    private Executor executor;
+    private int cutoff = NO_CUTOFF;
+    private boolean costOrdered;
+    private final Map<Task, Double> costs = new ConcurrentHashMap<Task, Double>();
 
     /**
      * Create {@link AggregatorTask} with empty task set.
@@ -42,26 +72,234 @@ public class AggregatorTask extends AbstractTask {
     }
 
     @Override
-    protected void executeImpl() {
-        Collection<Pair> inputCopy = TaskUtils.copyData(this.data);
-        Map<Integer, Pair> inputLookup = new HashMap<Integer, Pair>();
+    public void execute(TaskContext context) {
+        Collection<Pair> data = context.getData();
+        PairBatch input = PairBatch.of(data);
+        Ordinals ordinals = new Ordinals(input);
+        boolean batched = data instanceof PairBatch;
 
-        for (Pair pair : this.data) {
-            pair.setDifference(0);
-            inputLookup.put(pair.hashCode(), pair);
+        if (this.cutoff != NO_CUTOFF) {
+            write(data, Collections.singletonList(cascade(context, input,
+                    ordinals, batched)));
+            return;
         }
 
+        List<AggregateCall> calls = new ArrayList<AggregateCall>();
         for (Task task : this.tasks) {
-            Collection<Pair> data = TaskUtils.copyData(inputCopy);
-            Collection<Pair> results = TaskUtils.runTask(task, data);
+            calls.add(new AggregateCall(task, context, input, ordinals,
+                    input.size(), batched));
+        }
+
+        List<int[]> partials = new ArrayList<int[]>(calls.size());
+
+        if (this.executor != null && calls.size() > 1) {
+            List<FutureTask<int[]>> futures = new ArrayList<FutureTask<int[]>>();
+
+            for (int i = 1; i < calls.size(); i++) {
+                FutureTask<int[]> future = new FutureTask<int[]>(calls.get(i));
+                futures.add(future);
+                this.executor.execute(future);
+            }
+
+            try {
+                partials.add(calls.get(0).call());
+            } catch (RuntimeException e) {
+                for (FutureTask<int[]> future : futures) {
+                    future.cancel(true);
+                }
+                throw e;
+            }
+
+            for (FutureTask<int[]> future : futures) {
+                partials.add(TaskUtils.join(future));
+            }
+        } else {
+            for (AggregateCall call : calls) {
+                partials.add(call.call());
+            }
+        }
+
+        write(data, partials);
+    }
+
+    /**
+     * Run tasks one after another on the tuples not exceeding the cutoff.
+     * 
+     * @param context
+     *            invocation context
+     * @param input
+     *            columnar input tuples
+     * @param ordinals
+     *            ordinals of input tuples by id
+     * @param batched
+     *            pass batches rather than lists to tasks
+     * @return accumulated differences by ordinal
+     */
+    private int[] cascade(TaskContext context, PairBatch input,
+            Ordinals ordinals, boolean batched) {
+        int[] total = new int[input.size()];
+        int[] active = new int[input.size()];
+        int activeCount = input.size();
+
+        for (int i = 0; i < activeCount; i++) {
+            active[i] = i;
+        }
+
+        for (Task task : orderedTasks()) {
+            if (activeCount == 0) {
+                break;
+            }
+
+            PairBatch selection = input.select(active, activeCount);
+            AggregateCall call = new AggregateCall(task, context, selection,
+                    ordinals, input.size(), batched);
+
+            long start = System.nanoTime();
+            int[] partial = call.call();
+            recordCost(task, System.nanoTime() - start, activeCount);
+
+            int count = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int ordinal = active[i];
+                total[ordinal] += partial[ordinal];
+
+                if (total[ordinal] <= this.cutoff) {
+                    active[count++] = ordinal;
+                }
+            }
+            activeCount = count;
+        }
+
+        return total;
+    }
+
+    private List<Task> orderedTasks() {
+        List<Task> ordered = new ArrayList<Task>(this.tasks);
+
+        if (this.costOrdered) {
+            // NOTE: stable, unmeasured tasks go first to obtain a cost
+            Collections.sort(ordered, new Comparator<Task>() {
+                @Override
+                public int compare(Task o1, Task o2) {
+                    return Double.compare(cost(o1), cost(o2));
+                }
+
+                private double cost(Task task) {
+                    Double cost = AggregatorTask.this.costs.get(task);
+                    return cost != null ? cost : 0.0;
+                }
+            });
+        }
+
+        return ordered;
+    }
+
+    private void recordCost(Task task, long nanos, int count) {
+        double cost = (double) nanos / Math.max(count, 1);
+        Double previous = this.costs.get(task);
 
-            for (Pair result : results) {
-                Pair pair = inputLookup.get(result.hashCode());
+        // NOTE: exponential moving average smooths out single slow runs
+        if (previous != null) {
+            cost = 0.5 * previous + 0.5 * cost;
+        }
+
+        this.costs.put(task, cost);
+    }
 
-                pair.setDifference(pair.getDifference()
-                        + result.getDifference());
+    private static void write(Collection<Pair> data, List<int[]> partials) {
+        if (data instanceof PairBatch) {
+            PairBatch batch = (PairBatch) data;
+            for (int i = 0; i < batch.size(); i++) {
+                batch.setDifference(i, sum(partials, i));
             }
+        } else {
+            int ordinal = 0;
+            for (Pair pair : data) {
+                pair.setDifference(sum(partials, ordinal++));
+            }
+        }
+    }
+
+    private static int sum(List<int[]> partials, int ordinal) {
+        int difference = 0;
+        for (int[] partial : partials) {
+            difference += partial[ordinal];
         }
+        return difference;
+    }
+
+    /**
+     * Return aggregated tasks.
+     * 
+     * @return unmodifiable task set
+     */
+    public Collection<Task> getTasks() {
+        return Collections.unmodifiableCollection(this.tasks);
+    }
+
+    public int getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Set cutoff for cascading aggregation. Tuples whose accumulated
+     * difference exceeds the cutoff are not passed to later tasks. Use
+     * {@link AggregatorTask#NO_CUTOFF} to run all tasks on all tuples.
+     * 
+     * @param cutoff
+     *            maximum accumulated difference
+     * @return Aggregator instance (monadic)
+     */
+    public AggregatorTask setCutoff(int cutoff) {
+        this.cutoff = cutoff;
+        return this;
+    }
+
+    public boolean isCostOrdered() {
+        return costOrdered;
+    }
+
+    /**
+     * Order tasks by their observed cost per tuple in cascading aggregation.
+     * Otherwise tasks run in the order they were added.
+     * 
+     * @param costOrdered
+     *            run cheapest tasks first
+     * @return Aggregator instance (monadic)
+     */
+    public AggregatorTask setCostOrdered(boolean costOrdered) {
+        this.costOrdered = costOrdered;
+        return this;
+    }
+
+    /**
+     * Return the observed cost of a task in cascading aggregation.
+     * 
+     * @param task
+     *            aggregated task
+     * @return nanoseconds per tuple or {@link Double#NaN} if not measured yet
+     */
+    public double getCost(Task task) {
+        Double cost = this.costs.get(task);
+        return cost != null ? cost : Double.NaN;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set executor for concurrent task execution. Use <code>null</code> to
+     * execute tasks sequentially.<br />
+     * NOTE: tasks must not share non-thread-safe state.
+     * 
+     * @param executor
+     *            executor running the aggregated tasks
+     * @return Aggregator instance (monadic)
+     */
+    public AggregatorTask setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
     }
 
     /**
@@ -80,4 +318,162 @@ public class AggregatorTask extends AbstractTask {
         return this;
     }
 
+    /**
+     * Runs a single aggregated task on its own copy of the input and
+     * accumulates the resulting scores by tuple ordinal.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class AggregateCall implements Callable<int[]> {
+        private final Task task;
+        private final TaskContext context;
+        private final PairBatch input;
+        private final Ordinals ordinals;
+        private final int size;
+        private final boolean batched;
+
+        private AggregateCall(Task task, TaskContext context, PairBatch input,
+                Ordinals ordinals, int size, boolean batched) {
+            super();
+            this.task = task;
+            this.context = context;
+            this.input = input;
+            this.ordinals = ordinals;
+            this.size = size;
+            this.batched = batched;
+        }
+
+        @Override
+        public int[] call() {
+            PairBatch batch = this.input.copy();
+            Collection<Pair> data = this.batched ? batch : new BatchList(batch);
+            Collection<Pair> results = TaskUtils.runTask(this.task,
+                    this.context, data);
+
+            // NOTE: complete in-place result, positions equal input ordinals
+            if (results == data && !isMaterialised(data)
+                    && batch.size() == this.size) {
+                return batch.getDifferences();
+            }
+
+            int[] partial = new int[this.size];
+
+            if (results instanceof PairBatch) {
+                PairBatch resultBatch = (PairBatch) results;
+                for (int i = 0; i < resultBatch.size(); i++) {
+                    partial[ordinal(resultBatch.getId(i))] += resultBatch
+                            .getDifference(i);
+                }
+            } else {
+                for (Pair result : results) {
+                    partial[ordinal(result.getId())] += result.getDifference();
+                }
+            }
+
+            return partial;
+        }
+
+        private static boolean isMaterialised(Collection<Pair> data) {
+            return data instanceof BatchList
+                    && ((BatchList) data).materialised != null;
+        }
+
+        private int ordinal(long id) {
+            int ordinal = this.ordinals.get().get(id);
+
+            if (ordinal == IdIndex.NOT_FOUND) {
+                throw new IllegalStateException("Task result contains pair "
+                        + id + " not found in input.");
+            }
+
+            return ordinal;
+        }
+    }
+
+    /**
+     * Ordinals of input tuples by id, indexed on first use. Tasks returning
+     * their complete input in place never need the index.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class Ordinals {
+        private final PairBatch input;
+        private IdIndex index;
+
+        private Ordinals(PairBatch input) {
+            super();
+            this.input = input;
+        }
+
+        private synchronized IdIndex get() {
+            if (this.index == null) {
+                this.index = IdIndex.of(this.input);
+            }
+            return this.index;
+        }
+    }
+
+    /**
+     * Mutable list of pair views on a private batch copy. Differences are
+     * written through to the batch. On the first modification of the list
+     * itself the views are copied to an {@link ArrayList}, which backs the
+     * list from then on.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class BatchList extends AbstractList<Pair> implements
+            RandomAccess {
+        private final PairBatch batch;
+        private List<Pair> materialised;
+
+        private BatchList(PairBatch batch) {
+            super();
+            this.batch = batch;
+        }
+
+        @Override
+        public Pair get(int index) {
+            if (this.materialised != null) {
+                return this.materialised.get(index);
+            }
+            return this.batch.get(index);
+        }
+
+        @Override
+        public Pair set(int index, Pair element) {
+            return materialise().set(index, element);
+        }
+
+        @Override
+        public void add(int index, Pair element) {
+            materialise().add(index, element);
+            this.modCount++;
+        }
+
+        @Override
+        public Pair remove(int index) {
+            Pair previous = materialise().remove(index);
+            this.modCount++;
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            if (this.materialised != null) {
+                return this.materialised.size();
+            }
+            return this.batch.size();
+        }
+
+        private List<Pair> materialise() {
+            if (this.materialised == null) {
+                this.materialised = new ArrayList<Pair>(this.batch);
+            }
+            return this.materialised;
+        }
+    }
+
 }
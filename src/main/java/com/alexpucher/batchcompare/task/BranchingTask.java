@@ -16,16 +16,31 @@
 package com.alexpucher.batchcompare.task;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.processor.PairBatch;
+import com.alexpucher.batchcompare.processor.filter.FilterUtils;
 
 /**
  * Task wrapper that splits up processing based on a filter decision. Tuples
  * matched by the filter are processed by the matching-task the remaining tuples
  * by the remainder-task. After both tasks complete, the results are merged
- * together.
+ * together.<br />
+ * NOTE: the input is partitioned in a single pass over the selection vector of
+ * the filter, see {@link com.alexpucher.batchcompare.Filter}. Both partitions
+ * keep the input order, so the matching-task receives matched tuples in input
+ * order rather than in the output order of the filter, e.g. not ranked by a
+ * {@link com.alexpucher.batchcompare.processor.filter.CountFilter}.<br />
+ * NOTE: if an executor is set, the matching-task runs on the executor while
+ * the remainder-task runs on the calling thread. Matched results always precede
+ * the remainder in the output.
  * 
  * @author Alexander Pucher
  * 
@@ -35,6 +50,7 @@ public class BranchingTask extends AbstractTask {
     private Task taskRemainder;
 
     private Processor filter;
+    private Executor executor;
 
     /**
      * Create {@link BranchingTask} instance with given filter.
@@ -66,16 +82,77 @@ public class BranchingTask extends AbstractTask {
     }
 
     @Override
-    protected void executeImpl() {
-        Collection<Pair> dataMatch = new ArrayList<Pair>(this.data);
-        Collection<Pair> dataRemainder = new ArrayList<Pair>(this.data);
-
-        dataMatch = this.filter.execute(dataMatch);
-        dataRemainder.removeAll(dataMatch);
-
-        this.data = new ArrayList<Pair>();
-        this.data.addAll(TaskUtils.runTask(this.taskMatch, dataMatch));
-        this.data.addAll(TaskUtils.runTask(this.taskRemainder, dataRemainder));
+    public void execute(TaskContext context) {
+        Collection<Pair> data = context.getData();
+        BitSet selection = FilterUtils.selection(this.filter, data);
+
+        Collection<Pair> dataMatch;
+        Collection<Pair> dataRemainder;
+
+        if (data instanceof PairBatch) {
+            PairBatch batch = (PairBatch) data;
+            int[] positionsMatch = new int[batch.size()];
+            int[] positionsRemainder = new int[batch.size()];
+            int countMatch = 0;
+            int countRemainder = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (selection.get(i)) {
+                    positionsMatch[countMatch++] = i;
+                } else {
+                    positionsRemainder[countRemainder++] = i;
+                }
+            }
+
+            dataMatch = batch.select(positionsMatch, countMatch);
+            dataRemainder = batch.select(positionsRemainder, countRemainder);
+        } else {
+            List<Pair> listMatch = new ArrayList<Pair>(selection.cardinality());
+            List<Pair> listRemainder = new ArrayList<Pair>();
+            int position = 0;
+
+            for (Pair pair : data) {
+                if (selection.get(position++)) {
+                    listMatch.add(pair);
+                } else {
+                    listRemainder.add(pair);
+                }
+            }
+
+            dataMatch = listMatch;
+            dataRemainder = listRemainder;
+        }
+
+        Collection<Pair> resultMatch;
+        Collection<Pair> resultRemainder;
+
+        if (this.executor != null) {
+            FutureTask<Collection<Pair>> futureMatch = new FutureTask<Collection<Pair>>(
+                    new BranchCall(this.taskMatch, context.fork(dataMatch)));
+            this.executor.execute(futureMatch);
+
+            try {
+                resultRemainder = TaskUtils.runTask(this.taskRemainder,
+                        context, dataRemainder);
+            } catch (RuntimeException e) {
+                futureMatch.cancel(true);
+                throw e;
+            }
+
+            resultMatch = TaskUtils.join(futureMatch);
+        } else {
+            resultMatch = TaskUtils.runTask(this.taskMatch, context,
+                    dataMatch);
+            resultRemainder = TaskUtils.runTask(this.taskRemainder, context,
+                    dataRemainder);
+        }
+
+        Collection<Pair> output = new ArrayList<Pair>(resultMatch.size()
+                + resultRemainder.size());
+        output.addAll(resultMatch);
+        output.addAll(resultRemainder);
+
+        context.setData(output);
 
     }
 
@@ -105,4 +182,44 @@ public class BranchingTask extends AbstractTask {
         this.filter = filter;
     }
 
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set executor for concurrent branch execution. Use <code>null</code> to
+     * execute branches sequentially.
+     * 
+     * @param executor
+     *            executor running the matching-task
+     * @return this task
+     */
+    public BranchingTask setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Executes a branch task within a forked invocation context.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class BranchCall implements Callable<Collection<Pair>> {
+        private final Task task;
+        private final TaskContext context;
+
+        private BranchCall(Task task, TaskContext context) {
+            super();
+            this.task = task;
+            this.context = context;
+        }
+
+        @Override
+        public Collection<Pair> call() {
+            TaskUtils.execute(this.task, this.context);
+            return this.context.getData();
+        }
+    }
+
 }
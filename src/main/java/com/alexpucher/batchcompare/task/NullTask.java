@@ -24,7 +24,7 @@ package com.alexpucher.batchcompare.task;
 public class NullTask extends AbstractTask {
 
     @Override
-    protected void executeImpl() {
+    public void execute(TaskContext context) {
         // left blank
     }
 
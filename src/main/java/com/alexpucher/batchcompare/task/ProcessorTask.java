@@ -16,9 +16,13 @@
 package com.alexpucher.batchcompare.task;
 
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.ThreadSafe;
+import com.alexpucher.batchcompare.processor.BatchOperator;
 
 /**
- * Task wrapper for arbitrary {@link Processor}.
+ * Task wrapper for arbitrary {@link Processor}.<br />
+ * NOTE: processors not marked {@link ThreadSafe} are executed by one thread at
+ * a time.
  * 
  * @author Alexander Pucher
  * 
@@ -39,8 +43,30 @@ public class ProcessorTask extends AbstractTask {
     }
 
     @Override
-    public void executeImpl() {
-        this.data = this.processor.execute(this.data);
+    public void execute(TaskContext context) {
+        Processor processor = this.processor;
+
+        if (isThreadSafe(processor)) {
+            context.setData(processor.execute(context.getData()));
+            return;
+        }
+
+        synchronized (processor) {
+            context.setData(processor.execute(context.getData()));
+        }
+    }
+
+    /**
+     * Test whether processor may be executed concurrently. Batch operators are
+     * thread-safe if their operator is.
+     */
+    private static boolean isThreadSafe(Processor processor) {
+        if (processor instanceof ThreadSafe) {
+            return true;
+        }
+
+        return processor instanceof BatchOperator
+                && ((BatchOperator) processor).getOperator() instanceof ThreadSafe;
     }
 
     public Processor getProcessor() {
@@ -15,20 +15,49 @@
  */
 package com.alexpucher.batchcompare.task;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.alexpucher.batchcompare.Pair;
+import com.alexpucher.batchcompare.processor.PairBatch;
 
 /**
  * A SerialTask represents a series of processing instructions, which may be
- * arbitrary Tasks or SerialTasks themselves.
+ * arbitrary Tasks or SerialTasks themselves.<br />
+ * NOTE: in pipelined mode, the input is cut into chunks and consecutive tasks
+ * run as concurrent stages connected by bounded queues. Each stage processes
+ * one chunk at a time in input order. Barrier tasks, see
+ * {@link TaskUtils#isBarrier(Task)}, receive the complete data set and
+ * separate independent pipelines.
  * 
  * @author Alexander Pucher
  * 
  */
 public class SerialTask extends AbstractTask {
 
+    public static final int defaultChunkSize = 4096;
+    public static final int defaultQueueCapacity = 4;
+
+    /**
+     * End of stream marker, compared by reference.
+     */
+    private static final Collection<Pair> END = new ArrayList<Pair>(0);
+
     private Queue<Task> tasks;
+    private boolean pipelined;
+    private int chunkSize = defaultChunkSize;
+
     /**
      * Create {@link SerialTask} instance with empty task queue.
      */
@@ -38,10 +67,27 @@ public class SerialTask extends AbstractTask {
     }
 
     @Override
-    public void executeImpl() {
+    public void execute(TaskContext context) {
+        if (!this.pipelined) {
+            for (Task task : this.tasks) {
+                TaskUtils.execute(task, context);
+            }
+            return;
+        }
+
+        List<Task> stages = new ArrayList<Task>();
+
         for (Task task : this.tasks) {
-            task.execute();
+            if (TaskUtils.isBarrier(task)) {
+                pipeline(context, stages);
+                stages.clear();
+                TaskUtils.execute(task, context);
+            } else {
+                stages.add(task);
+            }
         }
+
+        pipeline(context, stages);
     }
 
     /**
@@ -59,4 +105,280 @@ public class SerialTask extends AbstractTask {
         return this;
     }
 
+    /**
+     * Return queued tasks.
+     * 
+     * @return unmodifiable task queue
+     */
+    public Collection<Task> getTasks() {
+        return Collections.unmodifiableCollection(this.tasks);
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Execute tasks as pipeline stages on chunks of the input.
+     * 
+     * @param pipelined
+     *            enable pipelined mode
+     * @return Query instance (monadic)
+     */
+    public SerialTask setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set number of tuples per chunk in pipelined mode.
+     * 
+     * @param chunkSize
+     *            positive chunk size
+     * @return Query instance (monadic)
+     */
+    public SerialTask setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Run a sequence of non-barrier tasks as pipeline. Stages run on
+     * dedicated threads, the calling thread collects the results.
+     */
+    private void pipeline(TaskContext context, List<Task> stages) {
+        Collection<Pair> data = context.getData();
+
+        if (stages.isEmpty()) {
+            return;
+        }
+
+        if (stages.size() == 1 || data.size() <= this.chunkSize) {
+            for (Task task : stages) {
+                TaskUtils.execute(task, context);
+            }
+            return;
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        BlockingQueue<Collection<Pair>> queue = newQueue();
+        ExecutorService executor = StageExecutor.INSTANCE;
+
+        executor.execute(new ChunkSource(data, this.chunkSize, queue, failure));
+
+        for (Task task : stages) {
+            BlockingQueue<Collection<Pair>> output = newQueue();
+            executor.execute(new Stage(task, context, queue, output, failure));
+            queue = output;
+        }
+
+        List<Pair> results = new ArrayList<Pair>(data.size());
+
+        Collection<Pair> chunk = take(queue);
+        while (chunk != END) {
+            results.addAll(chunk);
+            chunk = take(queue);
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause != null) {
+            throw new IllegalStateException(cause);
+        }
+
+        context.setData(results);
+    }
+
+    private static BlockingQueue<Collection<Pair>> newQueue() {
+        return new ArrayBlockingQueue<Collection<Pair>>(defaultQueueCapacity);
+    }
+
+    /**
+     * Put chunk into queue, retrying on interruption. Stage threads are never
+     * interrupted intentionally, giving up would stall the pipeline.
+     */
+    private static void put(BlockingQueue<Collection<Pair>> queue,
+            Collection<Pair> chunk) {
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                queue.put(chunk);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Collection<Pair> take(BlockingQueue<Collection<Pair>> queue) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Cuts the input into chunks. {@link PairBatch} input is cut into
+     * columnar chunks.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class ChunkSource implements Runnable {
+        private final Collection<Pair> data;
+        private final int chunkSize;
+        private final BlockingQueue<Collection<Pair>> output;
+        private final AtomicReference<Throwable> failure;
+
+        private ChunkSource(Collection<Pair> data, int chunkSize,
+                BlockingQueue<Collection<Pair>> output,
+                AtomicReference<Throwable> failure) {
+            super();
+            this.data = data;
+            this.chunkSize = chunkSize;
+            this.output = output;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (this.data instanceof PairBatch) {
+                    PairBatch batch = (PairBatch) this.data;
+                    int[] positions = new int[this.chunkSize];
+
+                    int start = 0;
+
+                    while (start < batch.size() && this.failure.get() == null) {
+                        int count = Math.min(this.chunkSize, batch.size()
+                                - start);
+                        for (int i = 0; i < count; i++) {
+                            positions[i] = start + i;
+                        }
+                        put(this.output, batch.select(positions, count));
+                        start += count;
+                    }
+                } else {
+                    Iterator<Pair> iterator = this.data.iterator();
+
+                    while (iterator.hasNext() && this.failure.get() == null) {
+                        List<Pair> chunk = new ArrayList<Pair>(this.chunkSize);
+                        while (iterator.hasNext()
+                                && chunk.size() < this.chunkSize) {
+                            chunk.add(iterator.next());
+                        }
+                        put(this.output, chunk);
+                    }
+                }
+            } catch (Throwable t) {
+                this.failure.compareAndSet(null, t);
+            } finally {
+                put(this.output, END);
+            }
+        }
+    }
+
+    /**
+     * Runs a single task on chunks taken from its input queue and passes the
+     * results on. After a failure anywhere in the pipeline, remaining chunks
+     * are drained to unblock upstream stages.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class Stage implements Runnable {
+        private final Task task;
+        private final TaskContext context;
+        private final BlockingQueue<Collection<Pair>> input;
+        private final BlockingQueue<Collection<Pair>> output;
+        private final AtomicReference<Throwable> failure;
+
+        private Stage(Task task, TaskContext context,
+                BlockingQueue<Collection<Pair>> input,
+                BlockingQueue<Collection<Pair>> output,
+                AtomicReference<Throwable> failure) {
+            super();
+            this.task = task;
+            this.context = context;
+            this.input = input;
+            this.output = output;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Collection<Pair> chunk = take(this.input);
+
+                    if (chunk == END) {
+                        break;
+                    }
+                    if (this.failure.get() != null) {
+                        continue;
+                    }
+
+                    try {
+                        put(this.output, TaskUtils.runTask(this.task,
+                                this.context, chunk));
+                    } catch (Throwable t) {
+                        this.failure.compareAndSet(null, t);
+                    }
+                }
+            } finally {
+                put(this.output, END);
+            }
+        }
+    }
+
+    /**
+     * Lazily created pool of daemon threads running pipeline stages. Stages
+     * block on their queues, so the pool grows with the number of concurrently
+     * active stages.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class StageExecutor {
+        private static final ExecutorService INSTANCE = Executors
+                .newCachedThreadPool(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "batchcompare-pipeline-stage");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
 }
@@ -0,0 +1,305 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * Streaming execution engine for task trees based on
+ * {@link java.util.concurrent.Flow}. The input is consumed incrementally in
+ * chunks, each task runs as an asynchronous stage and results are delivered to
+ * a subscriber chunk by chunk. Stage buffers are bounded, a slow stage or sink
+ * blocks its producers (backpressure), so memory stays flat independently of
+ * the input size.<br />
+ * NOTE: serial tasks are flattened into their children. Barrier tasks, see
+ * {@link TaskUtils#isBarrier(Task)}, collect their complete input before
+ * emitting results and therefore hold the data set in memory. Any other task
+ * is executed once per chunk. Each stage runs in its own forked
+ * {@link TaskContext}.<br />
+ * NOTE: if a stage fails or the sink cancels its subscription, the source is
+ * not consumed any further.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class StreamingEngine {
+
+    public static final int defaultChunkSize = 1024;
+    public static final int defaultBufferSize = 16;
+
+    private final Task task;
+    private int chunkSize = defaultChunkSize;
+    private int bufferSize = defaultBufferSize;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Create {@link StreamingEngine} instance for given task tree.
+     * 
+     * @param task
+     *            root task
+     */
+    public StreamingEngine(Task task) {
+        super();
+        this.task = task;
+    }
+
+    /**
+     * Stream the source through the task tree. Returns after the source has
+     * been consumed completely or the stream was aborted by a failing stage or
+     * the sink; results may still be in flight. The sink
+     * receives result chunks in input order followed by a completion or error
+     * signal.
+     * 
+     * @param source
+     *            base-candidate tuples, e.g. a lazy
+     *            {@link com.alexpucher.batchcompare.processor.CrossProduct}
+     * @param sink
+     *            result subscriber
+     */
+    public void execute(Iterable<Pair> source,
+            Flow.Subscriber<? super Collection<Pair>> sink) {
+        TaskContext context = new TaskContext(null);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        SubmissionPublisher<Collection<Pair>> head = new SubmissionPublisher<Collection<Pair>>(
+                this.executor, this.bufferSize);
+
+        Flow.Publisher<Collection<Pair>> tail = head;
+        for (Task stageTask : stages(this.task)) {
+            Stage stage = new Stage(stageTask, context.fork(null), failure,
+                    this.executor, this.bufferSize, this.chunkSize);
+            tail.subscribe(stage);
+            tail = stage;
+        }
+        tail.subscribe(sink);
+
+        try {
+            Iterator<Pair> iterator = source.iterator();
+
+            // NOTE: a failed stage or cancelled sink unsubscribes upstream
+            while (iterator.hasNext() && head.hasSubscribers()
+                    && failure.get() == null) {
+                List<Pair> chunk = new ArrayList<Pair>(this.chunkSize);
+                while (iterator.hasNext() && chunk.size() < this.chunkSize) {
+                    chunk.add(iterator.next());
+                }
+                head.submit(chunk);
+            }
+        } catch (RuntimeException e) {
+            head.closeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            head.closeExceptionally(e);
+            throw e;
+        }
+
+        if (failure.get() != null) {
+            head.closeExceptionally(failure.get());
+        } else {
+            head.close();
+        }
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set number of tuples per chunk.
+     * 
+     * @param chunkSize
+     *            positive chunk size
+     * @return engine instance (monadic)
+     */
+    public StreamingEngine setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Set maximum number of chunks buffered per stage.
+     * 
+     * @param bufferSize
+     *            positive buffer size
+     * @return engine instance (monadic)
+     */
+    public StreamingEngine setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set executor delivering chunks to stages and sink.
+     * 
+     * @param executor
+     *            asynchronous executor
+     * @return engine instance (monadic)
+     */
+    public StreamingEngine setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Flatten serial tasks into their children.
+     */
+    private static List<Task> stages(Task task) {
+        List<Task> stages = new ArrayList<Task>();
+
+        if (task instanceof SerialTask && !((SerialTask) task).isPipelined()) {
+            for (Task child : ((SerialTask) task).getTasks()) {
+                stages.addAll(stages(child));
+            }
+        } else if (!(task instanceof NullTask)) {
+            stages.add(task);
+        }
+
+        return stages;
+    }
+
+    /**
+     * Runs a task on incoming chunks and publishes the results. Barrier tasks
+     * collect all chunks and run once the upstream completes. A stage cancels
+     * its upstream subscription once it fails, any other stage fails or its
+     * own subscribers are gone.
+     * 
+     * @author Alexander Pucher
+     * 
+     */
+    private static class Stage extends SubmissionPublisher<Collection<Pair>>
+            implements Flow.Processor<Collection<Pair>, Collection<Pair>> {
+
+        private final Task task;
+        private final TaskContext context;
+        private final AtomicReference<Throwable> failure;
+        private final int chunkSize;
+        private final List<Pair> collected;
+        private Flow.Subscription subscription;
+
+        private Stage(Task task, TaskContext context,
+                AtomicReference<Throwable> failure, Executor executor,
+                int bufferSize, int chunkSize) {
+            super(executor, bufferSize);
+            this.task = task;
+            this.context = context;
+            this.failure = failure;
+            this.chunkSize = chunkSize;
+            this.collected = TaskUtils.isBarrier(task) ? new ArrayList<Pair>()
+                    : null;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Collection<Pair> chunk) {
+            if (this.failure.get() != null || !hasSubscribers()) {
+                this.subscription.cancel();
+                return;
+            }
+
+            try {
+                if (this.collected != null) {
+                    this.collected.addAll(chunk);
+                } else {
+                    emit(TaskUtils.runTask(this.task, this.context, chunk));
+                }
+                this.subscription.request(1);
+            } catch (Throwable t) {
+                this.subscription.cancel();
+                fail(t);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                if (this.collected != null) {
+                    Collection<Pair> results = TaskUtils.runTask(this.task,
+                            this.context, this.collected);
+                    for (Collection<Pair> chunk : TaskUtils.split(results,
+                            this.chunkSize)) {
+                        emit(chunk);
+                    }
+                }
+                close();
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        /**
+         * Record the failure and pass it downstream.<br />
+         * NOTE: errors are rethrown once subscribers have been notified, so
+         * they still reach the executor.
+         * 
+         * @param throwable
+         *            failure cause
+         */
+        private void fail(Throwable throwable) {
+            this.failure.compareAndSet(null, throwable);
+            closeExceptionally(throwable);
+
+            if (throwable instanceof Error) {
+                throw (Error) throwable;
+            }
+        }
+
+        private void emit(Collection<Pair> chunk) {
+            if (!chunk.isEmpty()) {
+                submit(chunk);
+            }
+        }
+    }
+
+}
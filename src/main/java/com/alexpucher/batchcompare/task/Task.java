@@ -35,6 +35,35 @@ public interface Task {
      */
     public abstract void execute();
 
+    /**
+     * Execute task within the given invocation context. The implementation
+     * obtains its input from {@link TaskContext#getData()} and stores its
+     * output using {@link TaskContext#setData(Collection)}.<br />
+     * NOTE: unlike {@link Task#execute()}, reentrant implementations do not
+     * use the parent relation or internal state and may be invoked by multiple
+     * threads concurrently.<br />
+     * NOTE: the default implementation bridges to {@link Task#push(Collection)},
+     * {@link Task#execute()} and {@link Task#pull()} and holds the task's
+     * monitor while doing so. Tasks obtaining their input from the parent
+     * relation must override this method.
+     * 
+     * @param context
+     *            invocation context
+     */
+    public default void execute(TaskContext context) {
+        synchronized (this) {
+            Collection<Pair> previous = this.pull();
+            this.push(context.getData());
+
+            try {
+                this.execute();
+                context.setData(this.pull());
+            } finally {
+                this.push(previous);
+            }
+        }
+    }
+
     /**
      * Return task's parent query.
      * 
@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.processor.FusedProcessor;
+
+/**
+ * Compiles task trees into equivalent trees with fewer passes over the data.
+ * Runs of consecutive {@link ProcessorTask} children of a {@link SerialTask}
+ * wrapping fusable processors, see {@link FusedProcessor#isFusable(Processor)},
+ * are replaced by a single task executing a {@link FusedProcessor}.
+ * Non-pipelined serial tasks nested in serial tasks are flattened first, so
+ * runs may span their boundaries. Branching and aggregator tasks are compiled
+ * recursively and keep their settings.<br />
+ * NOTE: compiling modifies the source tree. Tasks not rewritten are not
+ * copied but moved into the compiled tree, i.e. their parent is set to the
+ * compiled tree. The source tree keeps its children and can still be executed
+ * through {@link Task#execute(TaskContext)}, but its shared tasks no longer
+ * report it as their parent. Compiled trees produce the same output as their
+ * source.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class TaskCompiler {
+
+    private TaskCompiler() {
+    }
+
+    /**
+     * Compile task tree.
+     * 
+     * @param task
+     *            root task, may be <code>null</code>
+     * @return compiled root task
+     */
+    public static Task compile(Task task) {
+        if (task instanceof SerialTask) {
+            return compile((SerialTask) task);
+        }
+        if (task instanceof BranchingTask) {
+            BranchingTask branch = (BranchingTask) task;
+            return new BranchingTask(compile(branch.getTaskMatch()),
+                    compile(branch.getTaskRemainder()), branch.getFilter())
+                    .setExecutor(branch.getExecutor());
+        }
+        if (task instanceof AggregatorTask) {
+            AggregatorTask aggregator = (AggregatorTask) task;
+            AggregatorTask compiled = new AggregatorTask()
+                    .setCutoff(aggregator.getCutoff())
+                    .setCostOrdered(aggregator.isCostOrdered())
+                    .setExecutor(aggregator.getExecutor());
+
+            for (Task child : aggregator.getTasks()) {
+                compiled.addTask(compile(child));
+            }
+
+            return compiled;
+        }
+
+        return task;
+    }
+
+    private static SerialTask compile(SerialTask serial) {
+        SerialTask compiled = new SerialTask()
+                .setPipelined(serial.isPipelined())
+                .setChunkSize(serial.getChunkSize());
+        List<Processor> run = new ArrayList<Processor>();
+        Task first = null;
+
+        for (Task task : TaskUtils.flatten(serial, new ArrayList<Task>())) {
+            if (task instanceof ProcessorTask
+                    && FusedProcessor.isFusable(((ProcessorTask) task)
+                            .getProcessor())) {
+                if (run.isEmpty()) {
+                    first = task;
+                }
+                run.add(((ProcessorTask) task).getProcessor());
+                continue;
+            }
+
+            emit(compiled, run, first);
+            compiled.addTask(compile(task));
+        }
+
+        emit(compiled, run, first);
+        return compiled;
+    }
+
+    /**
+     * Add pending run of fusable processors to the compiled task. Single
+     * processors are not wrapped.
+     */
+    private static void emit(SerialTask compiled, List<Processor> run, Task first) {
+        if (run.size() == 1) {
+            compiled.addTask(first);
+        } else if (run.size() > 1) {
+            compiled.addTask(new ProcessorTask(new FusedProcessor(run)));
+        }
+
+        run.clear();
+    }
+
+}
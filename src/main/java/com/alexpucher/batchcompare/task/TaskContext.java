@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.task;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alexpucher.batchcompare.Pair;
+
+/**
+ * State of a single task invocation. Holds the data set flowing through the
+ * task graph and optional invocation-scoped attributes. Tasks keep their
+ * in-flight state in the context instead of fields, which allows a single task
+ * graph to be executed by multiple threads at once.<br />
+ * NOTE: a context is confined to one thread. Use
+ * {@link TaskContext#fork(Collection)} to hand data to a concurrently executed
+ * sub-task.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class TaskContext {
+
+    private final TaskContext parent;
+    private Collection<Pair> data;
+    private Map<Object, Object> attributes;
+
+    /**
+     * Create root {@link TaskContext} instance with given data set.
+     * 
+     * @param data
+     *            input data
+     */
+    public TaskContext(Collection<Pair> data) {
+        this(null, data);
+    }
+
+    private TaskContext(TaskContext parent, Collection<Pair> data) {
+        super();
+        this.parent = parent;
+        this.data = data;
+    }
+
+    /**
+     * Create child context for a sub-task invocation on the given data set.
+     * Attributes of this context are visible to the child, attributes set on
+     * the child are not visible to this context.
+     * 
+     * @param data
+     *            sub-task input data
+     * @return child context
+     */
+    public TaskContext fork(Collection<Pair> data) {
+        return new TaskContext(this, data);
+    }
+
+    public TaskContext getParent() {
+        return parent;
+    }
+
+    public Collection<Pair> getData() {
+        return data;
+    }
+
+    public void setData(Collection<Pair> data) {
+        this.data = data;
+    }
+
+    /**
+     * Return attribute of this context or its closest ancestor defining it.
+     * 
+     * @param key
+     *            attribute key
+     * @return attribute value or <code>null</code>
+     */
+    public Object getAttribute(Object key) {
+        TaskContext context = this;
+
+        while (context != null) {
+            if (context.attributes != null
+                    && context.attributes.containsKey(key)) {
+                return context.attributes.get(key);
+            }
+            context = context.parent;
+        }
+
+        return null;
+    }
+
+    /**
+     * Set attribute on this context.
+     * 
+     * @param key
+     *            attribute key
+     * @param value
+     *            attribute value
+     */
+    public void setAttribute(Object key, Object value) {
+        if (this.attributes == null) {
+            this.attributes = new HashMap<Object, Object>();
+        }
+
+        this.attributes.put(key, value);
+    }
+
+}
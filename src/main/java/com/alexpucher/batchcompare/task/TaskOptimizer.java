@@ -0,0 +1,729 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.alexpucher.batchcompare.ElementWise;
+import com.alexpucher.batchcompare.Filter;
+import com.alexpucher.batchcompare.KeyFilter;
+import com.alexpucher.batchcompare.PairGenerator;
+import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.monitor.MetricsRegistry;
+import com.alexpucher.batchcompare.monitor.StageStatistics;
+import com.alexpucher.batchcompare.processor.BatchEqualizer;
+import com.alexpucher.batchcompare.processor.BatchOperator;
+import com.alexpucher.batchcompare.processor.FusedProcessor;
+import com.alexpucher.batchcompare.processor.filter.BlockadeFilter;
+import com.alexpucher.batchcompare.processor.filter.IdentityFilter;
+import com.alexpucher.batchcompare.processor.filter.KeyMatchFilter;
+import com.alexpucher.batchcompare.processor.filter.ThresholdFilter;
+import com.alexpucher.batchcompare.processor.generator.BlockingGenerator;
+import com.alexpucher.batchcompare.processor.generator.CrossProductGenerator;
+
+/**
+ * Cost-based optimizer for task trees. Costs are relative per-pair estimates
+ * taken from annotations, see {@link #setCost(Object, double)}, or defaults
+ * by processor type. Selectivities are taken from earlier runs, see
+ * {@link #observe(Processor, long, long)} and {@link #observe(MetricsRegistry)},
+ * or defaults.<br />
+ * {@link #optimize(Task)} applies the following rewrites:
+ * <ul>
+ * <li>{@link KeyFilter} tasks are pushed ahead of other filters and of
+ * operators and equalizers marked {@link ElementWise}</li>
+ * <li>adjacent selection filters are ordered by ascending rank
+ * <code>(selectivity - 1) / cost</code></li>
+ * <li>identity filters are removed</li>
+ * <li>children of cost-ordered aggregator tasks with cutoff are ordered by
+ * ascending cost, children of concurrent aggregator tasks without cutoff by
+ * descending cost</li>
+ * </ul>
+ * {@link #chooseGenerator(Collection, Collection, Task)} picks the pair
+ * generation strategy and {@link #explain(Task, long)} prints a plan with its
+ * estimates.<br />
+ * NOTE: like {@link TaskCompiler} the optimizer returns a new tree and moves
+ * all tasks not rewritten into it, i.e. re-parents them. Operators are
+ * reordered only if they are {@link ElementWise}, being
+ * {@link com.alexpucher.batchcompare.ThreadSafe} does not suffice. Optimized
+ * trees produce the same output as their source.
+ * 
+ * @author Alexander Pucher
+ * 
+ */
+public class TaskOptimizer {
+
+    public static final double defaultOperatorCost = 10.0d;
+    public static final double defaultFilterCost = 1.0d;
+    public static final double defaultFilterSelectivity = 0.5d;
+
+    private final Map<Object, Double> costs = new IdentityHashMap<Object, Double>();
+    private final Map<Processor, long[]> observations = new IdentityHashMap<Processor, long[]>();
+
+    /**
+     * Create {@link TaskOptimizer} instance without annotations or
+     * observations.
+     */
+    public TaskOptimizer() {
+        super();
+    }
+
+    /**
+     * Annotate relative cost per pair of an operation. Annotations of
+     * instances take precedence over annotations of classes, annotations of
+     * operators and equalizers over annotations of their batch processor
+     * class.
+     * 
+     * @param operation
+     *            {@link Processor}, {@link com.alexpucher.batchcompare.Operator}
+     *            or {@link com.alexpucher.batchcompare.Equalizer} instance or
+     *            class
+     * @param cost
+     *            relative cost per pair
+     * @return Optimizer instance (monadic)
+     */
+    public synchronized TaskOptimizer setCost(Object operation, double cost) {
+        this.costs.put(operation, cost);
+        return this;
+    }
+
+    /**
+     * Record the amount of pairs consumed and produced by a run of the
+     * processor. Observations accumulate.
+     * 
+     * @param processor
+     *            Processor
+     * @param pairsIn
+     *            number of input pairs
+     * @param pairsOut
+     *            number of output pairs
+     */
+    public synchronized void observe(Processor processor, long pairsIn,
+            long pairsOut) {
+        long[] observation = this.observations.get(processor);
+
+        if (observation == null) {
+            observation = new long[2];
+            this.observations.put(processor, observation);
+        }
+
+        observation[0] += pairsIn;
+        observation[1] += pairsOut;
+    }
+
+    /**
+     * Record the pairs consumed and produced by all processor tasks measured
+     * by the registry, see {@link #observe(Processor, long, long)}.
+     * 
+     * @param registry
+     *            instrumentation results of earlier runs
+     */
+    public void observe(MetricsRegistry registry) {
+        for (StageStatistics statistics : registry.getStages()) {
+            if (statistics.getStage() instanceof ProcessorTask) {
+                observe(((ProcessorTask) statistics.getStage()).getProcessor(),
+                        statistics.getPairsIn(), statistics.getPairsOut());
+            }
+        }
+    }
+
+    /**
+     * Return estimated relative cost per input pair of the processor.
+     * 
+     * @param processor
+     *            Processor
+     * @return relative cost
+     */
+    public double getCost(Processor processor) {
+        if (processor instanceof FusedProcessor) {
+            double cost = 0.0d;
+            double selectivity = 1.0d;
+
+            for (Processor stage : ((FusedProcessor) processor).getStages()) {
+                cost += selectivity * getCost(stage);
+                selectivity *= getSelectivity(stage);
+            }
+
+            return cost;
+        }
+
+        Double cost = annotation(processor);
+
+        if (cost != null) {
+            return cost;
+        }
+        if (processor instanceof Filter || processor instanceof BatchEqualizer) {
+            return defaultFilterCost;
+        }
+
+        return defaultOperatorCost;
+    }
+
+    /**
+     * Return observed or estimated ratio of output to input pairs of the
+     * processor.
+     * 
+     * @param processor
+     *            Processor
+     * @return selectivity
+     */
+    public double getSelectivity(Processor processor) {
+        if (processor instanceof FusedProcessor) {
+            double selectivity = 1.0d;
+
+            for (Processor stage : ((FusedProcessor) processor).getStages()) {
+                selectivity *= getSelectivity(stage);
+            }
+
+            return selectivity;
+        }
+
+        synchronized (this) {
+            long[] observation = this.observations.get(processor);
+
+            if (observation != null && observation[0] > 0) {
+                return (double) observation[1] / (double) observation[0];
+            }
+        }
+
+        if (processor instanceof IdentityFilter) {
+            return 1.0d;
+        }
+        if (processor instanceof BlockadeFilter) {
+            return 0.0d;
+        }
+        if (processor instanceof Filter) {
+            return defaultFilterSelectivity;
+        }
+
+        return 1.0d;
+    }
+
+    /**
+     * Optimize task tree.
+     * 
+     * @param task
+     *            root task, may be <code>null</code>
+     * @return optimized root task
+     */
+    public Task optimize(Task task) {
+        if (task instanceof SerialTask) {
+            return optimize((SerialTask) task);
+        }
+        if (task instanceof BranchingTask) {
+            BranchingTask branch = (BranchingTask) task;
+            return new BranchingTask(optimize(branch.getTaskMatch()),
+                    optimize(branch.getTaskRemainder()), branch.getFilter())
+                    .setExecutor(branch.getExecutor());
+        }
+        if (task instanceof AggregatorTask) {
+            return optimize((AggregatorTask) task);
+        }
+
+        return task;
+    }
+
+    /**
+     * Choose pair generation strategy for the task. If the task starts with a
+     * {@link KeyMatchFilter}, possibly after optimization, blocking by its key
+     * yields the same pairs as the cross product and is used if it is
+     * estimated to be cheaper.<br />
+     * NOTE: approximate generators, i.e. sorted-neighborhood and MinHash,
+     * change the result and are never chosen.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @param task
+     *            task processing the generated pairs
+     * @return pair generator
+     */
+    public PairGenerator chooseGenerator(Collection<?> bases,
+            Collection<?> candidates, Task task) {
+        return new GeneratorChoice(bases, candidates, task).generator;
+    }
+
+    /**
+     * Print the plan of the task tree with estimated pairs, costs and
+     * selectivities per task.
+     * 
+     * @param task
+     *            root task
+     * @param pairs
+     *            number of input pairs
+     * @return plan text, one task per line
+     */
+    public String explain(Task task, long pairs) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(format("plan: pairs=%.0f cost=%.1f%n", (double) pairs,
+                pairs * estimate(task)[0]));
+        explain(builder, task, pairs, 1);
+        return builder.toString();
+    }
+
+    /**
+     * Print the plan of the task tree including the chosen pair generation
+     * strategy, see {@link #chooseGenerator(Collection, Collection, Task)}.
+     * 
+     * @param bases
+     *            base objects
+     * @param candidates
+     *            candidate objects
+     * @param task
+     *            root task
+     * @return plan text, one step per line
+     */
+    public String explain(Collection<?> bases, Collection<?> candidates,
+            Task task) {
+        GeneratorChoice choice = new GeneratorChoice(bases, candidates, task);
+        StringBuilder builder = new StringBuilder();
+        builder.append(format(
+                "generator: %s pairs=%.0f cost=%.1f (cross product cost=%.1f)%n",
+                name(choice.generator), choice.pairs, choice.cost,
+                choice.crossCost));
+        builder.append(explain(task, Math.round(choice.pairs)));
+        return builder.toString();
+    }
+
+    private SerialTask optimize(SerialTask serial) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Task task : TaskUtils.flatten(serial, new ArrayList<Task>())) {
+            if (!isIdentity(task)) {
+                tasks.add(optimize(task));
+            }
+        }
+
+        pushDown(tasks);
+        orderFilters(tasks);
+
+        SerialTask optimized = new SerialTask()
+                .setPipelined(serial.isPipelined())
+                .setChunkSize(serial.getChunkSize());
+
+        for (Task task : tasks) {
+            optimized.addTask(task);
+        }
+
+        return optimized;
+    }
+
+    private AggregatorTask optimize(final AggregatorTask aggregator) {
+        List<Task> tasks = new ArrayList<Task>();
+        final Map<Task, Double> estimates = new IdentityHashMap<Task, Double>();
+        boolean observed = true;
+
+        for (Task task : aggregator.getTasks()) {
+            observed &= !Double.isNaN(aggregator.getCost(task));
+        }
+
+        for (Task task : aggregator.getTasks()) {
+            Task optimized = optimize(task);
+            tasks.add(optimized);
+            estimates.put(optimized, observed ? aggregator.getCost(task)
+                    : estimate(optimized)[0]);
+        }
+
+        boolean cutoff = aggregator.getCutoff() != AggregatorTask.NO_CUTOFF;
+
+        if (cutoff && aggregator.isCostOrdered()) {
+            Collections.sort(tasks, new Comparator<Task>() {
+                @Override
+                public int compare(Task o1, Task o2) {
+                    return Double.compare(estimates.get(o1), estimates.get(o2));
+                }
+            });
+        } else if (!cutoff && aggregator.getExecutor() != null) {
+            Collections.sort(tasks, new Comparator<Task>() {
+                @Override
+                public int compare(Task o1, Task o2) {
+                    return Double.compare(estimates.get(o2), estimates.get(o1));
+                }
+            });
+        }
+
+        AggregatorTask optimized = new AggregatorTask()
+                .setCutoff(aggregator.getCutoff())
+                .setCostOrdered(aggregator.isCostOrdered())
+                .setExecutor(aggregator.getExecutor());
+
+        for (Task task : tasks) {
+            optimized.addTask(task);
+        }
+
+        return optimized;
+    }
+
+    /**
+     * Move key filters ahead of commutative stages, keeping the relative
+     * order of key filters.
+     */
+    private static void pushDown(List<Task> tasks) {
+        for (int i = 1; i < tasks.size(); i++) {
+            if (!(processor(tasks.get(i)) instanceof KeyFilter)) {
+                continue;
+            }
+
+            int target = i;
+
+            while (target > 0 && isCommutative(tasks.get(target - 1))) {
+                target--;
+            }
+
+            if (target < i) {
+                tasks.add(target, tasks.remove(i));
+            }
+        }
+    }
+
+    /**
+     * Sort runs of adjacent selection filters by rank. The sort is stable,
+     * filters of equal rank keep their order.
+     */
+    private void orderFilters(List<Task> tasks) {
+        Comparator<Task> byRank = new Comparator<Task>() {
+            @Override
+            public int compare(Task o1, Task o2) {
+                return Double.compare(rank(o1), rank(o2));
+            }
+        };
+
+        int start = 0;
+
+        while (start < tasks.size()) {
+            int end = start;
+
+            while (end < tasks.size() && isSelection(processor(tasks.get(end)))) {
+                end++;
+            }
+
+            if (end - start > 1) {
+                Collections.sort(tasks.subList(start, end), byRank);
+            }
+
+            start = end + 1;
+        }
+    }
+
+    private double rank(Task task) {
+        Processor processor = processor(task);
+        return (getSelectivity(processor) - 1.0d)
+                / Math.max(getCost(processor), Double.MIN_VALUE);
+    }
+
+    /**
+     * Estimate relative cost per input pair and selectivity of a task.
+     */
+    private double[] estimate(Task task) {
+        if (task == null || task instanceof NullTask) {
+            return new double[] { 0.0d, 1.0d };
+        }
+        if (task instanceof ProcessorTask) {
+            Processor processor = ((ProcessorTask) task).getProcessor();
+            return new double[] { getCost(processor), getSelectivity(processor) };
+        }
+        if (task instanceof SerialTask) {
+            double cost = 0.0d;
+            double selectivity = 1.0d;
+
+            for (Task child : ((SerialTask) task).getTasks()) {
+                double[] estimate = estimate(child);
+                cost += selectivity * estimate[0];
+                selectivity *= estimate[1];
+            }
+
+            return new double[] { cost, selectivity };
+        }
+        if (task instanceof BranchingTask) {
+            BranchingTask branch = (BranchingTask) task;
+            double ratio = getSelectivity(branch.getFilter());
+            double[] match = estimate(branch.getTaskMatch());
+            double[] remainder = estimate(branch.getTaskRemainder());
+
+            return new double[] {
+                    getCost(branch.getFilter()) + ratio * match[0]
+                            + (1.0d - ratio) * remainder[0],
+                    ratio * match[1] + (1.0d - ratio) * remainder[1] };
+        }
+        if (task instanceof AggregatorTask) {
+            double cost = 0.0d;
+
+            for (Task child : ((AggregatorTask) task).getTasks()) {
+                cost += estimate(child)[0];
+            }
+
+            return new double[] { cost, 1.0d };
+        }
+
+        return new double[] { defaultOperatorCost, 1.0d };
+    }
+
+    private void explain(StringBuilder builder, Task task, double pairs,
+            int depth) {
+        for (int i = 0; i < depth; i++) {
+            builder.append("  ");
+        }
+
+        double[] estimate = estimate(task);
+        String counts = format("pairs=%.0f->%.0f cost=%.1f", pairs, pairs
+                * estimate[1], pairs * estimate[0]);
+
+        if (task == null) {
+            builder.append("<none> ").append(counts).append(format("%n"));
+        } else if (task instanceof ProcessorTask) {
+            Processor processor = ((ProcessorTask) task).getProcessor();
+            builder.append("ProcessorTask[").append(describe(processor))
+                    .append("] ").append(counts);
+            builder.append(format(" cost/pair=%.1f selectivity=%.2f%s%n",
+                    estimate[0], estimate[1], isObserved(processor) ? " (observed)"
+                            : ""));
+        } else if (task instanceof SerialTask) {
+            SerialTask serial = (SerialTask) task;
+            builder.append(serial.isPipelined() ? "SerialTask[pipelined] "
+                    : "SerialTask ").append(counts).append(format("%n"));
+
+            double remaining = pairs;
+
+            for (Task child : serial.getTasks()) {
+                explain(builder, child, remaining, depth + 1);
+                remaining *= estimate(child)[1];
+            }
+        } else if (task instanceof BranchingTask) {
+            BranchingTask branch = (BranchingTask) task;
+            double ratio = getSelectivity(branch.getFilter());
+            builder.append("BranchingTask[").append(describe(branch.getFilter()))
+                    .append("] ").append(counts)
+                    .append(format(" selectivity=%.2f%s%n", ratio,
+                            isObserved(branch.getFilter()) ? " (observed)" : ""));
+            explain(builder, branch.getTaskMatch(), pairs * ratio, depth + 1);
+            explain(builder, branch.getTaskRemainder(), pairs * (1.0d - ratio),
+                    depth + 1);
+        } else if (task instanceof AggregatorTask) {
+            AggregatorTask aggregator = (AggregatorTask) task;
+            builder.append("AggregatorTask");
+
+            if (aggregator.getCutoff() != AggregatorTask.NO_CUTOFF) {
+                builder.append("[cutoff=").append(aggregator.getCutoff())
+                        .append(aggregator.isCostOrdered() ? ", cost-ordered]"
+                                : "]");
+            }
+
+            builder.append(' ').append(counts).append(format("%n"));
+
+            for (Task child : aggregator.getTasks()) {
+                explain(builder, child, pairs, depth + 1);
+            }
+        } else {
+            builder.append(name(task)).append(' ').append(counts)
+                    .append(format("%n"));
+        }
+    }
+
+    private synchronized boolean isObserved(Processor processor) {
+        long[] observation = this.observations.get(processor);
+        return observation != null && observation[0] > 0;
+    }
+
+    private synchronized Double annotation(Processor processor) {
+        Object inner = null;
+
+        if (processor instanceof BatchOperator) {
+            inner = ((BatchOperator) processor).getOperator();
+        } else if (processor instanceof BatchEqualizer) {
+            inner = ((BatchEqualizer) processor).getEqualizer();
+        }
+
+        Double cost = this.costs.get(processor);
+
+        if (cost == null && inner != null) {
+            cost = this.costs.get(inner);
+
+            if (cost == null) {
+                cost = this.costs.get(inner.getClass());
+            }
+        }
+        if (cost == null) {
+            cost = this.costs.get(processor.getClass());
+        }
+
+        return cost;
+    }
+
+    private static Processor processor(Task task) {
+        return (task instanceof ProcessorTask) ? ((ProcessorTask) task)
+                .getProcessor() : null;
+    }
+
+    private static boolean isIdentity(Task task) {
+        Processor processor = processor(task);
+        return processor != null && processor.getClass() == IdentityFilter.class;
+    }
+
+    /**
+     * Test whether a processor only selects pairs based on a per-pair
+     * predicate.
+     */
+    private static boolean isSelection(Processor processor) {
+        if (processor == null) {
+            return false;
+        }
+
+        return processor instanceof KeyFilter
+                || processor.getClass() == ThresholdFilter.class
+                || processor.getClass() == BlockadeFilter.class
+                || processor.getClass() == IdentityFilter.class;
+    }
+
+    /**
+     * Test whether a key filter may be moved ahead of the task.
+     */
+    private static boolean isCommutative(Task task) {
+        return isCommutative(processor(task));
+    }
+
+    private static boolean isCommutative(Processor processor) {
+        if (isSelection(processor)) {
+            return true;
+        }
+        if (processor == null) {
+            return false;
+        }
+        if (processor.getClass() == FusedProcessor.class) {
+            for (Processor stage : ((FusedProcessor) processor).getStages()) {
+                if (!isCommutative(stage)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (processor.getClass() == BatchOperator.class) {
+            return ((BatchOperator) processor).getOperator() instanceof ElementWise;
+        }
+        if (processor.getClass() == BatchEqualizer.class) {
+            return ((BatchEqualizer) processor).getEqualizer() instanceof ElementWise;
+        }
+
+        return false;
+    }
+
+    private static String describe(Processor processor) {
+        if (processor instanceof BatchOperator) {
+            return name(processor) + "("
+                    + name(((BatchOperator) processor).getOperator()) + ")";
+        }
+        if (processor instanceof BatchEqualizer) {
+            return name(processor) + "("
+                    + name(((BatchEqualizer) processor).getEqualizer()) + ")";
+        }
+        if (processor instanceof FusedProcessor) {
+            return processor.toString();
+        }
+
+        return name(processor);
+    }
+
+    private static String name(Object object) {
+        if (object == null) {
+            return "<none>";
+        }
+
+        String name = object.getClass().getSimpleName();
+        return name.isEmpty() ? object.getClass().getName() : name;
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.ENGLISH, format, args);
+    }
+
+    /**
+     * Cost comparison of cross product and blocking generation. Key
+     * extraction is charged once per object for blocking, pair creation and
+     * key comparison once per generated pair.
+     */
+    private final class GeneratorChoice {
+        final PairGenerator generator;
+        final double pairs;
+        final double cost;
+        final double crossCost;
+
+        GeneratorChoice(Collection<?> bases, Collection<?> candidates, Task task) {
+            double objects = (double) bases.size() + (double) candidates.size();
+            double crossPairs = (double) bases.size()
+                    * (double) candidates.size();
+            KeyMatchFilter filter = leadingKeyFilter(optimize(task));
+
+            if (filter == null) {
+                this.generator = new CrossProductGenerator();
+                this.pairs = crossPairs;
+                this.cost = crossPairs * defaultFilterCost;
+                this.crossCost = this.cost;
+                return;
+            }
+
+            double filterCost = getCost(filter);
+            double blockedPairs = crossPairs * getSelectivity(filter);
+            double blockingCost = objects * filterCost + blockedPairs
+                    * (defaultFilterCost + filterCost);
+
+            this.crossCost = crossPairs * (defaultFilterCost + filterCost);
+
+            if (blockingCost < this.crossCost) {
+                this.generator = new BlockingGenerator(filter.getExtractor());
+                this.pairs = blockedPairs;
+                this.cost = blockingCost;
+            } else {
+                this.generator = new CrossProductGenerator();
+                this.pairs = crossPairs;
+                this.cost = this.crossCost;
+            }
+        }
+    }
+
+    /**
+     * Return first key match filter not preceded by a stage changing the
+     * pair set or order.
+     */
+    private static KeyMatchFilter leadingKeyFilter(Task task) {
+        List<Task> tasks;
+
+        if (task instanceof SerialTask) {
+            tasks = TaskUtils.flatten((SerialTask) task, new ArrayList<Task>());
+        } else {
+            tasks = Collections.singletonList(task);
+        }
+
+        for (Task child : tasks) {
+            Processor processor = processor(child);
+
+            if (processor instanceof KeyMatchFilter) {
+                return (KeyMatchFilter) processor;
+            }
+            if (!isCommutative(child)) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+}
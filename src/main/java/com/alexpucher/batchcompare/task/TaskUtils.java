@@ -17,14 +17,29 @@ package com.alexpucher.batchcompare.task;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import com.alexpucher.batchcompare.Barrier;
+import com.alexpucher.batchcompare.ElementWise;
 import com.alexpucher.batchcompare.Equalizer;
+import com.alexpucher.batchcompare.KeyFilter;
 import com.alexpucher.batchcompare.Operator;
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.monitor.Instrumentation;
+import com.alexpucher.batchcompare.monitor.Instrumentation.Probe;
 import com.alexpucher.batchcompare.processor.BatchEqualizer;
 import com.alexpucher.batchcompare.processor.BatchOperator;
+import com.alexpucher.batchcompare.processor.FusedProcessor;
+import com.alexpucher.batchcompare.processor.Inverter;
+import com.alexpucher.batchcompare.processor.PairBatch;
 import com.alexpucher.batchcompare.processor.PairImpl;
+import com.alexpucher.batchcompare.processor.ParallelBatchOperator;
+import com.alexpucher.batchcompare.processor.filter.BlockadeFilter;
+import com.alexpucher.batchcompare.processor.filter.IdentityFilter;
+import com.alexpucher.batchcompare.processor.filter.ThresholdFilter;
 import com.alexpucher.batchcompare.processor.operator.AbstractMapEntryOperator;
 import com.alexpucher.batchcompare.processor.operator.MapOperator;
 
@@ -41,13 +56,19 @@ public class TaskUtils {
     }
 
     /**
-     * Create a Tuple-level copy of the input data set.
+     * Create a Tuple-level copy of the input data set. Copies keep the pair
+     * ids and are therefore equal to their originals.<br />
+     * NOTE: {@link PairBatch} input is copied column-wise.
      * 
      * @param data
      *            collection of tuples
      * @return independent copy of data set
      */
     public static Collection<Pair> copyData(Collection<Pair> data) {
+        if (data instanceof PairBatch) {
+            return ((PairBatch) data).copy();
+        }
+
         Collection<Pair> copy = new ArrayList<Pair>(data.size());
 
         for (Pair pair : data) {
@@ -67,12 +88,244 @@ public class TaskUtils {
      * @return result data set
      */
     public static Collection<Pair> runTask(Task task, Collection<Pair> data) {
-        TaskWrapper wrapper = new TaskWrapper(task);
-        wrapper.push(data);
-        wrapper.execute();
-        return wrapper.pull();
+        TaskContext context = new TaskContext(data);
+        execute(task, context);
+        return context.getData();
+    }
+
+    /**
+     * Execute Task with given data set as sub-task of the given invocation.
+     * 
+     * @param task
+     *            Task
+     * @param context
+     *            invocation context of the calling task
+     * @param data
+     *            collection of tuples
+     * @return result data set
+     */
+    public static Collection<Pair> runTask(Task task, TaskContext context,
+            Collection<Pair> data) {
+        TaskContext child = context.fork(data);
+        execute(task, child);
+        return child.getData();
+    }
+
+    /**
+     * Execute Task in given context and report the execution to
+     * {@link Instrumentation} if enabled.
+     * 
+     * @param task
+     *            Task
+     * @param context
+     *            invocation context
+     */
+    static void execute(Task task, TaskContext context) {
+        Probe probe = Instrumentation.start(task, size(context.getData()));
+
+        task.execute(context);
+
+        if (probe != null) {
+            probe.stop(size(context.getData()));
+        }
+    }
+
+    private static long size(Collection<Pair> data) {
+        return (data == null) ? 0L : data.size();
     }
     
+    /**
+     * Run a pending task execution on the calling thread if it has not been
+     * started yet, then wait for its completion and rethrow its failure.
+     * 
+     * @param future
+     *            task execution
+     * @return execution result
+     */
+    static <T> T join(FutureTask<T> future) {
+        future.run();
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while waiting for task.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Split data set into consecutive chunks of at most the given size.
+     * {@link PairBatch} input is split into columnar chunks, lists into
+     * sub-list views.
+     * 
+     * @param data
+     *            collection of tuples
+     * @param chunkSize
+     *            positive chunk size
+     * @return chunks in input order
+     */
+    static List<Collection<Pair>> split(Collection<Pair> data, int chunkSize) {
+        List<Collection<Pair>> chunks = new ArrayList<Collection<Pair>>();
+
+        if (data instanceof PairBatch) {
+            PairBatch batch = (PairBatch) data;
+            int[] positions = new int[Math.min(chunkSize, batch.size())];
+
+            for (int start = 0; start < batch.size(); start += chunkSize) {
+                int count = Math.min(chunkSize, batch.size() - start);
+                for (int i = 0; i < count; i++) {
+                    positions[i] = start + i;
+                }
+                chunks.add(batch.select(positions, count));
+            }
+        } else if (data instanceof List) {
+            List<Pair> list = (List<Pair>) data;
+
+            for (int start = 0; start < list.size(); start += chunkSize) {
+                chunks.add(list.subList(start, Math.min(start + chunkSize,
+                        list.size())));
+            }
+        } else {
+            List<Pair> chunk = new ArrayList<Pair>(chunkSize);
+
+            for (Pair pair : data) {
+                chunk.add(pair);
+                if (chunk.size() == chunkSize) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<Pair>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Test whether a task depends on the complete data set, see
+     * {@link Barrier}. Built-in tasks are barriers if any of their processors
+     * or sub-tasks are. Branching tasks are always barriers, their output
+     * lists all matches before the remainder and therefore differs if
+     * computed chunk by chunk. Unknown tasks are treated as barriers.
+     * 
+     * @param task
+     *            Task
+     * @return <code>true</code> if the input of the task must not be split
+     */
+    public static boolean isBarrier(Task task) {
+        if (task == null) {
+            return false;
+        }
+        if (task instanceof Barrier || task instanceof BranchingTask) {
+            return true;
+        }
+        if (task instanceof NullTask) {
+            return false;
+        }
+        if (task instanceof ProcessorTask) {
+            return isBarrier(((ProcessorTask) task).getProcessor());
+        }
+        if (task instanceof SerialTask) {
+            return isBarrier(((SerialTask) task).getTasks());
+        }
+        if (task instanceof AggregatorTask) {
+            return isBarrier(((AggregatorTask) task).getTasks());
+        }
+
+        return true;
+    }
+
+    /**
+     * Collect the tasks of a serial task in execution order. Nested serial
+     * tasks which are not pipelined are replaced by their tasks.
+     * 
+     * @param serial
+     *            serial task
+     * @param tasks
+     *            target list
+     * @return target list
+     */
+    static List<Task> flatten(SerialTask serial, List<Task> tasks) {
+        for (Task task : serial.getTasks()) {
+            if (task instanceof SerialTask && !((SerialTask) task).isPipelined()) {
+                flatten((SerialTask) task, tasks);
+            } else {
+                tasks.add(task);
+            }
+        }
+
+        return tasks;
+    }
+
+    /**
+     * Test whether a processor depends on the complete data set, see
+     * {@link Barrier}. Only processors known to act on each pair independently
+     * are not barriers: {@link BatchOperator}, {@link ParallelBatchOperator},
+     * {@link FusedProcessor}, {@link ThresholdFilter}, {@link IdentityFilter},
+     * {@link BlockadeFilter}, {@link KeyFilter} implementations, batch
+     * equalizers with an {@link ElementWise} equalizer and inverters over any
+     * of these filters. Subclasses and unknown processors are treated as
+     * barriers.
+     * 
+     * @param processor
+     *            Processor
+     * @return <code>true</code> if the input of the processor must not be
+     *         split
+     */
+    public static boolean isBarrier(Processor processor) {
+        if (processor == null) {
+            return false;
+        }
+        if (processor instanceof Barrier) {
+            return true;
+        }
+        if (processor instanceof KeyFilter) {
+            return false;
+        }
+
+        Class<?> type = processor.getClass();
+
+        if (type == BatchEqualizer.class) {
+            return !(((BatchEqualizer) processor).getEqualizer() instanceof ElementWise);
+        }
+        if (type == Inverter.class) {
+            return isBarrier(((Inverter) processor).getFilter());
+        }
+        if (type == com.alexpucher.batchcompare.processor.filter.Inverter.class) {
+            return isBarrier(((com.alexpucher.batchcompare.processor.filter.Inverter) processor)
+                    .getFilter());
+        }
+
+        return !(type == BatchOperator.class
+                || type == ParallelBatchOperator.class
+                || type == FusedProcessor.class
+                || type == ThresholdFilter.class
+                || type == IdentityFilter.class
+                || type == BlockadeFilter.class);
+    }
+
+    private static boolean isBarrier(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            if (isBarrier(task)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Create ProcessorTask wrapper for given processor.
      * 
@@ -113,26 +366,4 @@ public class TaskUtils {
         return new ProcessorTask(new BatchOperator(new MapOperator(mapOperator)));
     }
 
-    /**
-     * Helper class for {@link TaskUtils#runTask(Task, Collection)}.
-     * 
-     * @author Alexander Pucher
-     * 
-     */
-    private static class TaskWrapper extends AbstractTask {
-        private Task task;
-
-        private TaskWrapper(Task task) {
-            super();
-            this.task = task;
-            this.task.setParent(this);
-        }
-
-        @Override
-        protected void executeImpl() {
-            task.execute();
-        }
-
-    }
-
 }
@@ -19,8 +19,12 @@ package com.alexpucher.batchcompare;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,9 +32,13 @@ import org.junit.Test;
 
 import com.alexpucher.batchcompare.Pair;
 import com.alexpucher.batchcompare.Processor;
+import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.IdSet;
+import com.alexpucher.batchcompare.processor.PairBatch;
 import com.alexpucher.batchcompare.processor.PairImpl;
 import com.alexpucher.batchcompare.processor.filter.BlockadeFilter;
 import com.alexpucher.batchcompare.processor.filter.CountFilter;
+import com.alexpucher.batchcompare.processor.filter.FilterUtils;
 import com.alexpucher.batchcompare.processor.filter.IdentityFilter;
 import com.alexpucher.batchcompare.processor.filter.Inverter;
 import com.alexpucher.batchcompare.processor.filter.PercentFilter;
@@ -168,5 +176,193 @@ public class FilterTest {
         
         assertEquals("number of elements remaining", 0, outputPairs.size());
     }
-    
+
+    @Test
+    public void batchFilterTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3", "c4", "c5"));
+        int[] differences = new int[]{2, 0, 1, 5, 3};
+        for (int i = 0; i < differences.length; i++) {
+            batch.setDifference(i, differences[i]);
+        }
+        
+        Collection<Pair> thresholdPairs = new ThresholdFilter(3).execute(batch);
+        Collection<Pair> countPairs = new CountFilter(3).execute(batch);
+        
+        assertEquals("columnar threshold output", PairBatch.class, thresholdPairs.getClass());
+        assertEquals("number of elements remaining", 4, thresholdPairs.size());
+        assertEquals("number of elements remaining", 3, countPairs.size());
+        assertEquals("max difference of elements remaining", 2, Collections.max(countPairs).getDifference());
+    }
+
+    @Test
+    public void countFilterTieTest() {
+        Collection<Pair> pairs = new ArrayList<Pair>();
+        for (int i = 0; i < 10000; i++) {
+            Pair pair = new PairImpl("base", "c" + i);
+            pair.setDifference((i * 7919) % 13);
+            pairs.add(pair);
+        }
+        
+        ArrayList<Pair> expected = new ArrayList<Pair>(pairs);
+        Collections.sort(expected);
+        
+        Collection<Pair> sequential = new CountFilter(1000).execute(pairs);
+        Collection<Pair> parallel = new CountFilter(1000, true).execute(pairs);
+        
+        assertEquals("stable ranking order", new ArrayList<Pair>(expected.subList(0, 1000)), new ArrayList<Pair>(sequential));
+        assertEquals("parallel ranking order", new ArrayList<Pair>(sequential), new ArrayList<Pair>(parallel));
+    }
+
+    @Test
+    public void countFilterBatchTieTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3", "c4", "c5"));
+        int[] differences = new int[]{1, 0, 1, 0, 1};
+        for (int i = 0; i < differences.length; i++) {
+            batch.setDifference(i, differences[i]);
+        }
+        
+        PairBatch selected = new CountFilter(4).execute(batch);
+        
+        assertEquals("number of elements remaining", 4, selected.size());
+        assertEquals("first tie in input order", "c2", selected.getCandidate(0));
+        assertEquals("second tie in input order", "c4", selected.getCandidate(1));
+        assertEquals("third tie in input order", "c1", selected.getCandidate(2));
+        assertEquals("fourth tie in input order", "c3", selected.getCandidate(3));
+    }
+
+    @Test
+    public void percentFilterSelectionTest() {
+        Random random = new Random(42);
+        
+        for (int range : new int[]{100, Integer.MAX_VALUE}) {
+            List<Pair> pairs = new ArrayList<Pair>();
+            for (int i = 0; i < 5000; i++) {
+                Pair pair = new PairImpl("base", "c" + i);
+                pair.setDifference(random.nextInt(range));
+                pairs.add(pair);
+            }
+            
+            List<Pair> expected = new ArrayList<Pair>(pairs);
+            Collections.sort(expected);
+            expected = expected.subList(0, 1500);
+            
+            List<Pair> expectedInputOrder = new ArrayList<Pair>(pairs);
+            expectedInputOrder.retainAll(new HashSet<Pair>(expected));
+            
+            Collection<Pair> sorted = new PercentFilter(0.3, true).execute(pairs);
+            Collection<Pair> unsorted = new PercentFilter(0.3).execute(pairs);
+            
+            assertEquals("ranking order", expected, new ArrayList<Pair>(sorted));
+            assertEquals("input order", expectedInputOrder, new ArrayList<Pair>(unsorted));
+        }
+    }
+
+    @Test
+    public void percentFilterBatchSelectionTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3", "c4", "c5"));
+        int[] differences = new int[]{3, 0, Integer.MAX_VALUE, 3, -5};
+        for (int i = 0; i < differences.length; i++) {
+            batch.setDifference(i, differences[i]);
+        }
+        
+        PairBatch unsorted = new PercentFilter(0.6).execute(batch);
+        PairBatch sorted = new PercentFilter(0.6, true).execute(batch);
+        
+        assertEquals("number of elements remaining", 3, unsorted.size());
+        assertEquals("input order", "c1", unsorted.getCandidate(0));
+        assertEquals("input order", "c2", unsorted.getCandidate(1));
+        assertEquals("input order", "c5", unsorted.getCandidate(2));
+        assertEquals("ranking order", "c5", sorted.getCandidate(0));
+        assertEquals("ranking order", "c2", sorted.getCandidate(1));
+        assertEquals("ranking order", "c1", sorted.getCandidate(2));
+    }
+
+    @Test
+    public void inverterOrderTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3", "c4", "c5"));
+        int[] differences = new int[]{2, 0, 1, 5, 3};
+        for (int i = 0; i < differences.length; i++) {
+            batch.setDifference(i, differences[i]);
+        }
+        
+        Collection<Pair> remainder = new Inverter(new CountFilter(2)).execute(batch);
+        List<Pair> listRemainder = new ArrayList<Pair>(new Inverter(new CountFilter(2)).execute(new ArrayList<Pair>(batch)));
+        
+        assertEquals("columnar remainder", PairBatch.class, remainder.getClass());
+        assertEquals("number of elements remaining", 3, remainder.size());
+        assertEquals("input order", Arrays.asList(batch.get(0), batch.get(3), batch.get(4)), new ArrayList<Pair>(remainder));
+        assertEquals("input order", Arrays.asList(batch.get(0), batch.get(3), batch.get(4)), listRemainder);
+    }
+
+    @Test
+    public void idSetTest() {
+        IdSet dense = new IdSet(100, 199, 100);
+        IdSet sparse = new IdSet(Long.MIN_VALUE, Long.MAX_VALUE, 2);
+        
+        for (long id = 100; id < 200; id += 2) {
+            dense.add(id);
+        }
+        for (long id = 0; id < 1000; id++) {
+            sparse.add(id * 0x100000000L);
+        }
+        sparse.add(Long.MIN_VALUE);
+        
+        assertEquals("dense size", 50, dense.size());
+        assertEquals("dense member", true, dense.contains(198));
+        assertEquals("dense non-member", false, dense.contains(199));
+        assertEquals("dense out of range", false, dense.contains(-1));
+        assertEquals("sparse size", 1001, sparse.size());
+        assertEquals("sparse member", true, sparse.contains(999 * 0x100000000L));
+        assertEquals("sparse non-member", false, sparse.contains(1));
+        assertEquals("sparse sentinel member", true, sparse.contains(Long.MIN_VALUE));
+        assertEquals("duplicate id", false, sparse.add(0));
+    }
+
+    @Test
+    public void selectionVectorTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3", "c4", "c5"));
+        int[] differences = new int[]{2, 0, 1, 5, 3};
+        for (int i = 0; i < differences.length; i++) {
+            batch.setDifference(i, differences[i]);
+        }
+        List<Pair> list = new ArrayList<Pair>(batch);
+        
+        for (Collection<Pair> pairs : Arrays.asList(batch, list)) {
+            assertEquals("threshold selection", FilterUtils.selection(new int[]{0, 1, 2}, 3), new ThresholdFilter(2).select(pairs));
+            assertEquals("count selection", FilterUtils.selection(new int[]{1, 2}, 2), new CountFilter(2).select(pairs));
+            assertEquals("percent selection", FilterUtils.selection(new int[]{1, 2}, 2), new PercentFilter(0.4).select(pairs));
+            assertEquals("inverted selection", FilterUtils.selection(new int[]{0, 3, 4}, 3), new Inverter(new CountFilter(2)).select(pairs));
+            assertEquals("identity selection", 5, new IdentityFilter().select(pairs).cardinality());
+            assertEquals("blockade selection", 0, new BlockadeFilter().select(pairs).cardinality());
+        }
+    }
+
+    @Test
+    public void processorSelectionIsolationTest() {
+        Processor mutating = new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                for (Pair pair : pairs) {
+                    pair.setDifference(pair.getDifference() + 100);
+                }
+                return new ThresholdFilter(100).execute(pairs);
+            }
+        };
+        
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3"));
+        batch.setDifference(0, 1);
+        List<Pair> list = new ArrayList<Pair>(Generator.generate("base", Arrays.asList("c1", "c2", "c3")));
+        list.get(0).setDifference(1);
+        
+        for (Collection<Pair> pairs : Arrays.asList(batch, list)) {
+            assertEquals("selection", FilterUtils.selection(new int[]{1, 2}, 2), FilterUtils.selection(mutating, pairs));
+            
+            int sum = 0;
+            for (Pair pair : pairs) {
+                sum += pair.getDifference();
+            }
+            assertEquals("input unchanged", 1, sum);
+        }
+    }
+
 }
@@ -0,0 +1,216 @@
+/**
+ *    Copyright 2011 Alexander Pucher
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.alexpucher.batchcompare;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.StreamSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alexpucher.batchcompare.processor.CrossProduct;
+import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.PairBatch;
+import com.alexpucher.batchcompare.processor.filter.ThresholdFilter;
+import com.alexpucher.batchcompare.processor.generator.BlockStatistics;
+import com.alexpucher.batchcompare.processor.generator.BlockingGenerator;
+import com.alexpucher.batchcompare.processor.generator.MinHashGenerator;
+import com.alexpucher.batchcompare.processor.generator.SortedNeighborhoodGenerator;
+
+public class GeneratorTest {
+    
+    private List<String> bases;
+    private List<String> candidates;
+
+    @Before
+    public void setUp() throws Exception {
+        bases = Arrays.asList("b1", "b2", "b3");
+        candidates = Arrays.asList("c1", "c2", "c3", "c4");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    }
+    
+    @Test
+    public void crossProductTest() {
+        CrossProduct pairs = Generator.crossProduct(bases, candidates);
+        List<Pair> eager = new ArrayList<Pair>(Generator.generate(bases, candidates));
+        
+        assertEquals("number of pairs", 12, pairs.size());
+        
+        Iterator<Pair> lazy = pairs.iterator();
+        for (Pair pair : eager) {
+            Pair next = lazy.next();
+            assertEquals("base", pair.getBase(), next.getBase());
+            assertEquals("candidate", pair.getCandidate(), next.getCandidate());
+        }
+        assertFalse("exhausted", lazy.hasNext());
+    }
+    
+    @Test
+    public void crossProductIdentityTest() {
+        CrossProduct pairs = Generator.crossProduct(bases, candidates);
+        
+        assertEquals("stable pair", pairs.iterator().next(), pairs.get(0));
+        assertEquals("random access", "c2", pairs.get(5).getCandidate());
+    }
+    
+    @Test
+    public void crossProductParallelTest() {
+        CrossProduct pairs = Generator.crossProduct(bases, candidates);
+        
+        long count = StreamSupport.stream(pairs.spliterator(), true).distinct().count();
+        
+        assertEquals("number of distinct pairs", 12, count);
+    }
+    
+    @Test
+    public void crossProductFilterTest() {
+        Collection<Pair> output = new ThresholdFilter(0).execute(Generator.crossProduct(bases, candidates));
+        
+        assertEquals("number of elements remaining", 12, output.size());
+    }
+
+    @Test
+    public void blockingTest() {
+        BlockingGenerator generator = new BlockingGenerator(new PrefixExtractor(1));
+        
+        PairBatch pairs = generator.generate(Arrays.asList("a1", "a2", "b1", "x1"), Arrays.asList("a3", "b2", "b3", "c1"));
+        
+        assertEquals("number of pairs", 4, pairs.size());
+        assertEquals("base", "a1", pairs.get(0).getBase());
+        assertEquals("candidate", "a3", pairs.get(0).getCandidate());
+        assertEquals("base", "b1", pairs.get(3).getBase());
+        assertEquals("candidate", "b3", pairs.get(3).getCandidate());
+        
+        BlockStatistics statistics = generator.getStatistics().get(0);
+        
+        assertEquals("number of blocks", 2, statistics.getBlockCount());
+        assertEquals("max block key", "a", statistics.getMaxBlockKey());
+        assertEquals("max block size", 2, statistics.getMaxBlockPairs());
+        assertEquals("unblocked bases", 1, statistics.getUnblockedBases());
+        assertEquals("unblocked candidates", 1, statistics.getUnblockedCandidates());
+    }
+
+    @Test
+    public void blockingMultiPassTest() {
+        BlockingGenerator generator = new BlockingGenerator(new PrefixExtractor(1), new SuffixExtractor());
+        
+        PairBatch pairs = generator.generate(Arrays.asList("a1", "b2"), Arrays.asList("a1", "a2", "c2"));
+        
+        // a1-a1, a1-a2 (prefix), b2-a2, b2-c2 (suffix)
+        assertEquals("number of pairs", 4, pairs.size());
+        assertEquals("second pass statistics", 3, generator.getStatistics().get(1).getPairCount());
+    }
+    
+    @Test
+    public void sortedNeighborhoodTest() {
+        SortedNeighborhoodGenerator generator = new SortedNeighborhoodGenerator(2, new PrefixExtractor(2));
+        
+        PairBatch pairs = generator.generate(Arrays.asList("15", "50"), Arrays.asList("40", "10", "30", "20"));
+        
+        assertEquals("number of pairs", 4, pairs.size());
+        assertEquals("lower neighbor", "10", pairs.get(0).getCandidate());
+        assertEquals("upper neighbor", "20", pairs.get(1).getCandidate());
+        assertEquals("window at end", "40", pairs.get(2).getCandidate());
+        assertEquals("window at end", "30", pairs.get(3).getCandidate());
+    }
+
+    @Test
+    public void sortedNeighborhoodMultiPassTest() {
+        SortedNeighborhoodGenerator generator = new SortedNeighborhoodGenerator(1, new PrefixExtractor(2), new SuffixExtractor());
+        
+        PairBatch pairs = generator.generate(Arrays.asList("11"), Arrays.asList("10", "31", "20"));
+        
+        // prefix pass yields 11-20, suffix pass yields 11-31
+        assertEquals("number of pairs", 2, pairs.size());
+        
+        generator.setWindow(3);
+        
+        assertEquals("duplicates removed", 3, generator.generate(Arrays.asList("11"), Arrays.asList("10", "31", "20")).size());
+    }
+    
+    @Test
+    public void minHashTest() {
+        Map<String, String> order = new HashMap<String, String>();
+        order.put("orderId", "1");
+        order.put("customer", "a");
+        order.put("amount", "10");
+        Map<String, String> orderCopy = new HashMap<String, String>(order);
+        orderCopy.put("amount", "20");
+        Map<String, String> invoice = new HashMap<String, String>();
+        invoice.put("invoiceId", "1");
+        invoice.put("total", "10");
+        
+        MinHashGenerator generator = new MinHashGenerator(8, 1);
+        
+        PairBatch pairs = generator.generate(Arrays.asList(order), Arrays.asList(invoice, orderCopy));
+        
+        assertEquals("number of pairs", 1, pairs.size());
+        assertEquals("similar record", orderCopy, pairs.get(0).getCandidate());
+        
+        generator.setIncludeValues(true);
+        generator.setRows(3);
+        
+        assertEquals("identical records", 1, generator.generate(Arrays.asList(order), Arrays.asList(invoice, order)).size());
+        assertEquals("signature length", 2 * 24, generator.signatures(Arrays.asList(order, invoice)).length);
+    }
+
+    private static class PrefixExtractor implements KeyExtractor {
+        private final int length;
+
+        private PrefixExtractor(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public Object extractKey(Object object) {
+            String value = (String) object;
+            return (value.startsWith("x")) ? null : value.substring(0, this.length);
+        }
+    }
+
+    private static class SuffixExtractor implements KeyExtractor {
+        @Override
+        public Object extractKey(Object object) {
+            String value = (String) object;
+            return value.substring(value.length() - 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minHashSetterValidationTest() {
+        new MinHashGenerator(4, 2).setRows(0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void minHashSignatureOverflowTest() {
+        new MinHashGenerator(1 << 16, 1).setRows(1 << 16);
+    }
+
+}
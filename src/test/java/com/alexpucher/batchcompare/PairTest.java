@@ -15,13 +15,22 @@
  */
 package com.alexpucher.batchcompare;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.UUID;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.IdIndex;
+import com.alexpucher.batchcompare.processor.PairBatch;
 import com.alexpucher.batchcompare.processor.PairImpl;
+import com.alexpucher.batchcompare.processor.identity.SequentialIdentity;
 
 public class PairTest {
     
@@ -57,4 +66,142 @@ public class PairTest {
         assertTrue("bigger difference", smallDifference.compareTo(bigDifference) < 0);
     }
 
+    @Test
+    public void batchViewTest() {
+        PairBatch batch = Generator.generateBatch(Arrays.asList("b1", "b2"), Arrays.asList("c1", "c2", "c3"));
+        
+        assertEquals("number of pairs", 6, batch.size());
+        assertEquals("base", "b2", batch.get(4).getBase());
+        assertEquals("candidate", "c2", batch.get(4).getCandidate());
+        
+        batch.get(4).setDifference(7);
+        
+        assertEquals("write-through", 7, batch.getDifference(4));
+        assertEquals("view equality", batch.get(4), batch.get(4));
+    }
+
+    @Test
+    public void batchSelectTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3"));
+        batch.setDifference(0, 3);
+        batch.setDifference(1, 1);
+        batch.setDifference(2, 2);
+        
+        PairBatch selection = batch.select(batch.order(), 2);
+        
+        assertEquals("number of pairs", 2, selection.size());
+        assertEquals("first candidate", "c2", selection.get(0).getCandidate());
+        assertEquals("second candidate", "c3", selection.get(1).getCandidate());
+        assertEquals("identity preserved", batch.get(1), selection.get(0));
+    }
+
+    @Test
+    public void identityTest() {
+        Object base = new Object();
+        Object candidate = new Object();
+        PairImpl pair = new PairImpl(base, candidate);
+        PairImpl similar = new PairImpl(base, candidate);
+        PairImpl copy = new PairImpl(pair);
+        
+        assertFalse("similar pair", pair.equals(similar));
+        assertEquals("copied pair", pair, copy);
+        assertEquals("copied hash code", pair.hashCode(), copy.hashCode());
+        assertEquals("derived uuid", pair.getUUID(), copy.getUUID());
+    }
+
+    @Test
+    public void legacyPairIdTest() {
+        final UUID uuid = PairImpl.toUUID(42);
+        Pair legacy = new Pair() {
+            public Object getBase() { return null; }
+            public Object getCandidate() { return null; }
+            public UUID getUUID() { return uuid; }
+            public int getDifference() { return 0; }
+            public Pair setDifference(int difference) { return this; }
+            public int compareTo(Pair o) { return 0; }
+        };
+        
+        assertEquals("id derived from uuid", 42, legacy.getId());
+    }
+
+    @Test
+    public void sequentialIdentityTest() {
+        PairIdentity identity = new SequentialIdentity(2);
+        
+        assertEquals(0, identity.nextId());
+        assertEquals(1, identity.nextId());
+        assertEquals("block reservation", 2, identity.nextIds(3));
+        assertEquals("next stripe", 5, identity.nextId());
+    }
+
+    @Test
+    public void idIndexTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3"));
+        IdIndex dense = IdIndex.of(batch);
+        IdIndex sparse = new IdIndex(Long.MIN_VALUE, Long.MAX_VALUE, 2);
+        
+        for (int i = 0; i < 1000; i++) {
+            sparse.put(i * 0x100000000L, i);
+        }
+        
+        assertEquals("dense ordinal", 2, dense.get(batch.getId(2)));
+        assertEquals("dense missing", IdIndex.NOT_FOUND, dense.get(batch.getId(2) + 1));
+        assertEquals("sparse size", 1000, sparse.size());
+        assertEquals("sparse ordinal", 999, sparse.get(999 * 0x100000000L));
+        assertEquals("sparse missing", IdIndex.NOT_FOUND, sparse.get(1));
+        assertEquals("previous ordinal", 7, sparse.put(7 * 0x100000000L, 0));
+    }
+
+    @Test
+    public void batchCopyOnWriteTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3"));
+        PairBatch copy = batch.copy();
+        
+        copy.setDifference(0, 5);
+        copy.append(0, 2);
+        batch.append(0, 1);
+        
+        assertEquals("original difference", 0, batch.getDifference(0));
+        assertEquals("copied difference", 5, copy.getDifference(0));
+        assertEquals("original appended candidate", "c2", batch.getCandidate(3));
+        assertEquals("copied appended candidate", "c3", copy.getCandidate(3));
+        assertEquals("shared id", batch.getId(2), copy.getId(2));
+    }
+
+    @Test
+    public void batchCopyKeepsOriginTest() {
+        PairBatch batch = Generator.generateBatch("base", Arrays.asList("c1", "c2", "c3"));
+        PairBatch copyA = batch.copy();
+        batch.append(0, 0);
+        PairBatch copyB = batch.copy();
+        copyA.append(0, 1);
+        copyB.append(0, 2);
+        batch.append(0, 2);
+        
+        assertEquals("original size", 5, batch.size());
+        assertEquals("original appended candidate", "c1", batch.getCandidate(3));
+        assertEquals("original appended after copy", "c3", batch.getCandidate(4));
+        assertEquals("first copy size", 4, copyA.size());
+        assertEquals("first copy appended candidate", "c2", copyA.getCandidate(3));
+        assertEquals("second copy size", 5, copyB.size());
+        assertEquals("second copy shared candidate", "c1", copyB.getCandidate(3));
+        assertEquals("second copy appended candidate", "c3", copyB.getCandidate(4));
+    }
+
+    @Test
+    public void batchConversionTest() {
+        Pair pairA = new PairImpl("base", "c1", 7L);
+        Pair pairB = new PairImpl("base", "c2", 3L);
+        pairB.setDifference(4);
+        
+        PairBatch batch = PairBatch.of(Arrays.asList(pairA, pairB));
+        
+        assertEquals("size", 2, batch.size());
+        assertEquals("shared base domain", 1, batch.getBaseCount());
+        assertEquals("candidate domain", 2, batch.getCandidateCount());
+        assertEquals("id kept", 3L, batch.getId(1));
+        assertEquals("difference kept", 4, batch.getDifference(1));
+        assertTrue("batch returned as is", batch == PairBatch.of(batch));
+    }
+
 }
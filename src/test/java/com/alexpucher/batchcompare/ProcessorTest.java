@@ -16,6 +16,9 @@
 package com.alexpucher.batchcompare;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,6 +27,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Before;
@@ -31,8 +36,12 @@ import org.junit.Test;
 
 import com.alexpucher.batchcompare.processor.BatchOperator;
 import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.PairBatch;
 import com.alexpucher.batchcompare.processor.PairImpl;
+import com.alexpucher.batchcompare.processor.ParallelBatchOperator;
 import com.alexpucher.batchcompare.processor.filter.PercentFilter;
+import com.alexpucher.batchcompare.processor.operator.AbstractMapEntryOperator;
+import com.alexpucher.batchcompare.processor.operator.MapCompiler;
 import com.alexpucher.batchcompare.processor.operator.MapKeyOperator;
 import com.alexpucher.batchcompare.processor.operator.MapKeyValueOperator;
 import com.alexpucher.batchcompare.processor.operator.MapOperator;
@@ -130,6 +139,65 @@ public class ProcessorTest {
         assertEquals("multi-single", keyPenalty + valuePenalty, keyValueOp.execute(makePair(multiMap, singleMap)).getDifference());
     }
     
+    @Test
+    public void keyLookupEquivalenceTest() {
+        Operator scanKeyOp = new MapOperator(new ProcessorTask(new BatchOperator(new MapKeyOperator())));
+        Operator scanKeyValueOp = new MapOperator(new ProcessorTask(new BatchOperator(new MapKeyValueOperator())));
+        
+        for (Map<String, String> base : inputSet) {
+            for (Map<String, String> candidate : inputSet) {
+                assertEquals("key lookup", scanKeyOp.execute(makePair(base, candidate)).getDifference(),
+                        keyOp.execute(makePair(base, candidate)).getDifference());
+                assertEquals("key-value lookup", scanKeyValueOp.execute(makePair(base, candidate)).getDifference(),
+                        keyValueOp.execute(makePair(base, candidate)).getDifference());
+            }
+        }
+    }
+    
+    @Test
+    public void entryScanEquivalenceTest() {
+        AbstractMapEntryOperator lengthOp = new AbstractMapEntryOperator() {
+            @Override
+            public int entryDifference(Entry<?, ?> base, Entry<?, ?> candidate) {
+                return Math.abs(base.getValue().toString().length() - candidate.getValue().toString().length());
+            }
+        };
+        Operator scanOp = new MapOperator(lengthOp);
+        Operator taskOp = new MapOperator(new ProcessorTask(new BatchOperator(lengthOp)));
+        MapOperator compiledOp = new MapOperator(lengthOp);
+        compiledOp.setCompiler(new MapCompiler());
+        
+        for (Map<String, String> base : inputSet) {
+            for (Map<String, String> candidate : inputSet) {
+                assertEquals("entry scan", taskOp.execute(makePair(base, candidate)).getDifference(),
+                        scanOp.execute(makePair(base, candidate)).getDifference());
+                assertEquals("compiled entry scan", taskOp.execute(makePair(base, candidate)).getDifference(),
+                        compiledOp.execute(makePair(base, candidate)).getDifference());
+            }
+        }
+        assertEquals("(multi-single) comparison", 10, scanOp.execute(makePair(multiMap, singleMap)).getDifference());
+    }
+    
+    @Test
+    public void compiledMapEquivalenceTest() {
+        MapCompiler compiler = new MapCompiler(2);
+        MapOperator compiledKeyOp = new MapOperator(new MapKeyOperator());
+        MapOperator compiledKeyValueOp = new MapOperator(new MapKeyValueOperator());
+        compiledKeyOp.setCompiler(compiler);
+        compiledKeyValueOp.setCompiler(compiler);
+        
+        for (Map<String, String> base : inputSet) {
+            for (Map<String, String> candidate : inputSet) {
+                assertEquals("compiled key", keyOp.execute(makePair(base, candidate)).getDifference(),
+                        compiledKeyOp.execute(makePair(base, candidate)).getDifference());
+                assertEquals("compiled key-value", keyValueOp.execute(makePair(base, candidate)).getDifference(),
+                        compiledKeyValueOp.execute(makePair(base, candidate)).getDifference());
+            }
+        }
+        assertSame("cached form", compiler.compile(multiMap), compiler.compile(multiMap));
+        assertEquals("interned key", compiler.intern(TEST_KEY1), compiler.compile(singleMap).getKeyId(0));
+    }
+    
     @Test
     public void batchOperatorTest() {
         BatchOperator eval = new BatchOperator(this.keyOp);
@@ -144,6 +212,19 @@ public class ProcessorTest {
         
     }
 
+    @Test
+    public void batchOperatorColumnarTest() {
+        BatchOperator eval = new BatchOperator(this.keyOp);
+        PairBatch batch = Generator.generateBatch(singleMap, inputSet);
+        
+        Collection<Pair> results = eval.execute(batch);
+        
+        assertEquals("updated in place", batch, results);
+        assertEquals("(single-empty) comparison", keyPenalty, batch.getDifference(0));
+        assertEquals("(single-single) comparison", 0, batch.getDifference(1));
+        assertEquals("(single-multi) comparison", 0, batch.getDifference(2));
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void batchOperatorReuseTest() {
@@ -162,6 +243,53 @@ public class ProcessorTest {
         assertEquals("(single-empty) comparison", keyPenalty, results.get(1).getDifference());
     }
     
+    @Test
+    public void parallelBatchOperatorTest() {
+        Collection<Map<String, String>> candidates = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < 100; i++) {
+            candidates.addAll(inputSet);
+        }
+        
+        List<Pair> expected = new ArrayList<Pair>(new BatchOperator(this.keyOp).execute(Generator.generate(multiMap, candidates)));
+        ParallelBatchOperator owned = new ParallelBatchOperator(this.keyOp, 4, 8);
+        List<Pair> results = new ArrayList<Pair>(owned.execute(Generator.generate(multiMap, candidates)));
+        ForkJoinPool privatePool = owned.getPool();
+        owned.close();
+        assertTrue("private pool released", privatePool.isShutdown());
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelBatchOperator injected = new ParallelBatchOperator(this.keyValueOp, pool, 8);
+        PairBatch batch = injected.execute(Generator.generateBatch(multiMap, candidates));
+        injected.close();
+        assertFalse("injected pool kept", pool.isShutdown());
+        pool.shutdown();
+        
+        assertEquals("number of results", expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("result order", expected.get(i).getCandidate(), results.get(i).getCandidate());
+            assertEquals("result difference", expected.get(i).getDifference(), results.get(i).getDifference());
+        }
+        assertEquals("(multi-single) comparison", keyPenalty + valuePenalty, batch.getDifference(1));
+    }
+
+    @Test
+    public void parallelBatchOperatorIsolationTest() {
+        Operator counter = new Operator() {
+            private int counter = 0;
+
+            @Override
+            public Pair execute(Pair pair) {
+                return pair.setDifference(this.counter++);
+            }
+        };
+        
+        List<Pair> results = new ArrayList<Pair>(new ParallelBatchOperator(counter, 4, 1).execute(Generator.generate(singleMap, inputSet)));
+        
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("sequential execution", i, results.get(i).getDifference());
+        }
+    }
+    
     @Test
     public void querySimulatingBatchTest() {
         SerialTask query = setupQuery();
@@ -17,30 +17,65 @@ package com.alexpucher.batchcompare;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.alexpucher.batchcompare.monitor.Instrumentation;
+import com.alexpucher.batchcompare.monitor.LatencyHistogram;
+import com.alexpucher.batchcompare.monitor.MetricsRegistry;
+import com.alexpucher.batchcompare.processor.BatchEqualizer;
 import com.alexpucher.batchcompare.processor.BatchOperator;
+import com.alexpucher.batchcompare.processor.FusedProcessor;
 import com.alexpucher.batchcompare.processor.Generator;
+import com.alexpucher.batchcompare.processor.Inverter;
 import com.alexpucher.batchcompare.processor.PairImpl;
+import com.alexpucher.batchcompare.processor.equalizer.ExponentialEqualizer;
 import com.alexpucher.batchcompare.processor.equalizer.LinearEqualizer;
 import com.alexpucher.batchcompare.processor.filter.BlockadeFilter;
 import com.alexpucher.batchcompare.processor.filter.CountFilter;
 import com.alexpucher.batchcompare.processor.filter.IdentityFilter;
+import com.alexpucher.batchcompare.processor.filter.KeyMatchFilter;
+import com.alexpucher.batchcompare.processor.filter.ThresholdFilter;
+import com.alexpucher.batchcompare.processor.generator.BlockingGenerator;
+import com.alexpucher.batchcompare.processor.generator.CrossProductGenerator;
 import com.alexpucher.batchcompare.processor.operator.FixedOperator;
+import com.alexpucher.batchcompare.processor.operator.MapKeyOperator;
+import com.alexpucher.batchcompare.processor.operator.MapOperator;
 import com.alexpucher.batchcompare.processor.operator.OffsetOperator;
 import com.alexpucher.batchcompare.task.AbstractTask;
 import com.alexpucher.batchcompare.task.AggregatorTask;
 import com.alexpucher.batchcompare.task.BranchingTask;
+import com.alexpucher.batchcompare.task.NullTask;
 import com.alexpucher.batchcompare.task.ProcessorTask;
 import com.alexpucher.batchcompare.task.SerialTask;
+import com.alexpucher.batchcompare.task.StreamingEngine;
 import com.alexpucher.batchcompare.task.Task;
+import com.alexpucher.batchcompare.task.TaskCompiler;
+import com.alexpucher.batchcompare.task.TaskOptimizer;
 import com.alexpucher.batchcompare.task.TaskUtils;
 
 public class TaskTest {
@@ -219,6 +254,50 @@ public class TaskTest {
         assertEquals("maximum score", 10, Collections.max(this.output).getDifference());
     }
     
+    @Test
+    public void aggregatorListInputTest() {
+        AggregatorTask aggregator = new AggregatorTask();
+        aggregator.addTask(TaskUtils.createTask(new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                Pair first = pairs.iterator().next();
+                pairs.remove(first);
+                pairs.add(first.setDifference(4));
+                return pairs;
+            }
+        }));
+        aggregator.addTask(TaskUtils.createTask(new FixedOperator(1)));
+        
+        execTask(aggregator);
+        
+        assertEquals("number of items", this.input.size(), this.output.size());
+        assertEquals("list modified by task", 5, Collections.max(this.output).getDifference());
+        assertEquals("minimum score", 1, Collections.min(this.output).getDifference());
+    }
+
+    @Test
+    public void aggregatorListReorderTest() {
+        AggregatorTask aggregator = new AggregatorTask();
+        aggregator.addTask(TaskUtils.createTask(new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                List<Pair> list = (List<Pair>) pairs;
+                Collections.reverse(list);
+                for (int i = 0; i < list.size(); i++) {
+                    list.get(i).setDifference(i);
+                }
+                return list;
+            }
+        }));
+
+        execTask(aggregator);
+
+        List<Pair> result = new ArrayList<Pair>(this.output);
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals("score by id", result.size() - 1 - i, result.get(i).getDifference());
+        }
+    }
+
     @Test
     public void aggregatorSimilarTuplesTest() {
         Pair pairInput = this.input.iterator().next();
@@ -235,6 +314,674 @@ public class TaskTest {
         assertEquals("maximum score", 1, Collections.max(this.output).getDifference());
     }
     
+    @Test
+    public void branchingTaskPartitionTest() {
+        int difference = 0;
+        for (Pair pair : this.input) {
+            pair.setDifference(difference++ % 2);
+        }
+        
+        Processor plainFilter = new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                return new ThresholdFilter(0).execute(pairs);
+            }
+        };
+        
+        for (Processor filter : Arrays.asList(new ThresholdFilter(0), plainFilter)) {
+            BranchingTask branch = new BranchingTask(filter);
+            branch.setTaskMatch(new ProcessorTask(new IdentityFilter()));
+            branch.setTaskRemainder(new ProcessorTask(new IdentityFilter()));
+            
+            execTask(branch);
+            
+            List<Pair> results = new ArrayList<Pair>(this.output);
+            assertEquals("number of items", this.input.size(), results.size());
+            assertEquals("matches first", 0, results.get(2).getDifference());
+            assertEquals("remainder last", 1, results.get(3).getDifference());
+            assertEquals("match in input order", "c3", results.get(1).getCandidate());
+            assertEquals("remainder in input order", "c4", results.get(4).getCandidate());
+        }
+    }
+
+    @Test
+    public void branchingTaskRankedMatchOrderTest() {
+        int[] differences = {3, 1, 2, 5, 4};
+        int position = 0;
+        for (Pair pair : this.input) {
+            pair.setDifference(differences[position++]);
+        }
+
+        List<Pair> ranked = new ArrayList<Pair>(new CountFilter(3).execute(new ArrayList<Pair>(this.input)));
+        assertEquals("filter output ranked", "c2", ranked.get(0).getCandidate());
+
+        BranchingTask branch = new BranchingTask(new NullTask(), new NullTask(), new CountFilter(3));
+        execTask(branch);
+
+        List<Pair> results = new ArrayList<Pair>(this.output);
+        assertEquals("match in input order", "c1", results.get(0).getCandidate());
+        assertEquals("match in input order", "c2", results.get(1).getCandidate());
+        assertEquals("match in input order", "c3", results.get(2).getCandidate());
+        assertEquals("remainder in input order", "c4", results.get(3).getCandidate());
+        assertEquals("remainder in input order", "c5", results.get(4).getCandidate());
+    }
+
+    @Test
+    public void branchingTaskConcurrentTest() {
+        int difference = 0;
+        for (Pair pair : this.input) {
+            pair.setDifference(difference++ % 2);
+        }
+        
+        BranchingTask sequential = new BranchingTask(new ThresholdFilter(0));
+        sequential.setTaskMatch(new ProcessorTask(new BatchOperator(new OffsetOperator(10))));
+        sequential.setTaskRemainder(new ProcessorTask(new IdentityFilter()));
+        execTask(sequential);
+        List<Pair> expected = new ArrayList<Pair>(this.output);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Executor idleExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // never runs, branch falls back to calling thread
+            }
+        };
+        
+        try {
+            for (Executor branchExecutor : Arrays.asList(executor, idleExecutor)) {
+                this.input = TaskUtils.copyData(expected);
+                for (Pair pair : this.input) {
+                    pair.setDifference(pair.getDifference() % 10);
+                }
+                
+                BranchingTask concurrent = new BranchingTask(new ThresholdFilter(0)).setExecutor(branchExecutor);
+                concurrent.setTaskMatch(new ProcessorTask(new BatchOperator(new OffsetOperator(10))));
+                concurrent.setTaskRemainder(new ProcessorTask(new IdentityFilter()));
+                execTask(concurrent);
+                
+                assertEquals("deterministic output", expected, new ArrayList<Pair>(this.output));
+                assertEquals("match branch executed", 10, this.output.iterator().next().getDifference());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void aggregatorConcurrentTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        
+        try {
+            AggregatorTask aggregator = new AggregatorTask().setExecutor(executor);
+            aggregator.addTask(new ProcessorTask(new BatchOperator(new FixedOperator(1))));
+            aggregator.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(2))));
+            aggregator.addTask(new ProcessorTask(new BatchOperator(new FixedOperator(4))));
+            
+            execTask(aggregator);
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertEquals("number of items", this.input.size(), this.output.size());
+        
+        for(Pair pair : this.output) {
+            assertEquals("score aggregated", 7, pair.getDifference());
+        }
+    }
+    
+    @Test
+    public void aggregatorHashCollisionTest() {
+        Pair pairA = new PairImpl("base", "c1", 1L);
+        Pair pairB = new PairImpl("base", "c2", 1L << 32);
+        this.input = new ArrayList<Pair>(Arrays.asList(pairA, pairB));
+        
+        AggregatorTask aggregator = new AggregatorTask();
+        aggregator.addTask(TaskUtils.createTask(new FixedOperator(1)));
+        
+        execTask(aggregator);
+        
+        assertEquals("colliding hash codes", pairA.hashCode(), pairB.hashCode());
+        assertEquals("first score", 1, pairA.getDifference());
+        assertEquals("second score", 1, pairB.getDifference());
+    }
+    
+    @Test
+    public void aggregatorCascadeTest() {
+        int difference = 0;
+        for (Pair pair : this.input) {
+            pair.setDifference(difference++);
+        }
+        
+        TestOperator counting = new TestOperator();
+        Task expensive = TaskUtils.createTask(counting);
+        Task cheap = TaskUtils.createTask(new OffsetOperator(0));
+        
+        AggregatorTask aggregator = new AggregatorTask().setCutoff(2);
+        aggregator.addTask(cheap);
+        aggregator.addTask(expensive);
+        
+        execTask(aggregator);
+        
+        List<Pair> results = new ArrayList<Pair>(this.output);
+        assertEquals("number of items", this.input.size(), results.size());
+        assertEquals("pairs reaching second task", 3, counting.counter);
+        assertEquals("accumulated score", 0 + 0, results.get(0).getDifference());
+        assertEquals("accumulated score", 2 + 2, results.get(2).getDifference());
+        assertEquals("partial score of dropped pair", 4, results.get(4).getDifference());
+        assertEquals("cost observed", false, Double.isNaN(aggregator.getCost(expensive)));
+    }
+    
+    @Test
+    public void reentrantExecutionTest() throws Exception {
+        final SerialTask graph = new SerialTask();
+        AggregatorTask aggregator = new AggregatorTask();
+        aggregator.addTask(new ProcessorTask(new BatchOperator(new FixedOperator(1))));
+        aggregator.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(2))));
+        graph.addTask(aggregator);
+        graph.addTask(new BranchingTask(new ThresholdFilter(2))
+                .setTaskMatch(new TestTask())
+                .setTaskRemainder(new NullTask()));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Collection<Pair>>> futures = new ArrayList<Future<Collection<Pair>>>();
+        
+        try {
+            for (int i = 0; i < 16; i++) {
+                final int offset = i;
+                futures.add(executor.submit(new Callable<Collection<Pair>>() {
+                    @Override
+                    public Collection<Pair> call() {
+                        Collection<Pair> data = Generator.generate("base", Arrays.asList("c1", "c2", "c3"));
+                        for (Pair pair : data) {
+                            pair.setDifference(offset);
+                        }
+                        return TaskUtils.runTask(graph, data);
+                    }
+                }));
+            }
+            
+            for (int i = 0; i < futures.size(); i++) {
+                for (Pair pair : futures.get(i).get()) {
+                    assertEquals("independent invocation", i + 3, pair.getDifference());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertEquals("legacy task invocations", 16, testTaskCounter);
+    }
+    
+    @Test
+    public void interfaceTaskBridgeTest() {
+        serial.addTask(new Task() {
+            private Collection<Pair> data;
+            private Task parent;
+            
+            @Override
+            public void execute() {
+                for (Pair pair : this.data) {
+                    pair.setDifference(3);
+                }
+            }
+            
+            @Override
+            public Task getParent() {
+                return this.parent;
+            }
+            
+            @Override
+            public void setParent(Task parent) {
+                this.parent = parent;
+            }
+            
+            @Override
+            public void push(Collection<Pair> data) {
+                this.data = data;
+            }
+            
+            @Override
+            public Collection<Pair> pull() {
+                return this.data;
+            }
+        });
+        
+        execTask(serial);
+        
+        assertEquals("number of items", this.input.size(), this.output.size());
+        
+        for(Pair pair : this.output) {
+            assertEquals("bridged execution", 3, pair.getDifference());
+        }
+    }
+    
+    @Test
+    public void pipelinedSerialTaskTest() {
+        List<String> candidates = candidates(1000);
+        
+        for (Collection<Pair> input : Arrays.asList(Generator.generate("base", candidates), Generator.generateBatch("base", candidates))) {
+            List<Pair> result = assertSameOutput(pipelineGraph(false), pipelineGraph(true), input);
+            
+            assertEquals("number of items", 401, result.size());
+            for (int i = 0; i < result.size(); i++) {
+                assertEquals("matches before remainder", i < 200 ? i + 201 : i - 200, result.get(i).getDifference());
+            }
+        }
+        assertEquals("barrier detected", true, TaskUtils.isBarrier(new ProcessorTask(new CountFilter(1))));
+        assertEquals("element-wise task", false, TaskUtils.isBarrier(new ProcessorTask(new ThresholdFilter(1))));
+        assertEquals("branching task", true, TaskUtils.isBarrier(new BranchingTask(new NullTask(), new NullTask(), new ThresholdFilter(1))));
+        assertEquals("set up equalizer", true, TaskUtils.isBarrier(new BatchEqualizer(new LinearEqualizer(1))));
+        assertEquals("element-wise equalizer", false, TaskUtils.isBarrier(new BatchEqualizer(new ExponentialEqualizer(1))));
+        assertEquals("inverted key filter", false, TaskUtils.isBarrier(new Inverter(new KeyMatchFilter(new KeyExtractor() {
+            @Override
+            public Object extractKey(Object object) {
+                return object;
+            }
+        }))));
+        assertEquals("unknown processor", true, TaskUtils.isBarrier(new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                return pairs;
+            }
+        }));
+        assertEquals("unknown subclass", true, TaskUtils.isBarrier(new ThresholdFilter(1) {
+        }));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void pipelinedSerialTaskFailureTest() {
+        SerialTask pipeline = new SerialTask().setPipelined(true).setChunkSize(1);
+        pipeline.addTask(new ProcessorTask(new IdentityFilter()));
+        pipeline.addTask(new ProcessorTask(new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                throw new IllegalStateException("stage failure");
+            }
+        }));
+        
+        TaskUtils.runTask(pipeline, this.input);
+    }
+    
+    @Test
+    public void streamingEngineTest() throws Exception {
+        Collection<Pair> input = Generator.crossProduct("base", candidates(1000));
+        
+        List<Pair> expected = new ArrayList<Pair>(TaskUtils.runTask(streamingGraph(), new ArrayList<Pair>(input)));
+        CollectingSubscriber sink = new CollectingSubscriber();
+        new StreamingEngine(streamingGraph()).setChunkSize(64).setBufferSize(2).execute(input, sink);
+        List<Pair> streamed = sink.await();
+        
+        assertEquals("streamed output", describe(expected), describe(streamed));
+        assertEquals("number of items", 500, streamed.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("order and score", i < 250 ? i + 251 : i - 249, streamed.get(i).getDifference());
+        }
+    }
+    
+    @Test(expected = ExecutionException.class)
+    public void streamingEngineFailureTest() throws Exception {
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new Processor() {
+            @Override
+            public Collection<Pair> execute(Collection<Pair> pairs) {
+                throw new IllegalStateException("stage failure");
+            }
+        }));
+        
+        CollectingSubscriber sink = new CollectingSubscriber();
+        new StreamingEngine(graph).execute(this.input, sink);
+        sink.await();
+    }
+    
+    @Test
+    public void streamingEngineFailureStopsSourceTest() throws Exception {
+        final int total = 100000;
+        final AtomicInteger consumed = new AtomicInteger();
+        Iterable<Pair> source = new Iterable<Pair>() {
+            @Override
+            public Iterator<Pair> iterator() {
+                return new Iterator<Pair>() {
+                    @Override
+                    public boolean hasNext() {
+                        return consumed.get() < total;
+                    }
+                    
+                    @Override
+                    public Pair next() {
+                        return new PairImpl("base", "c" + consumed.getAndIncrement());
+                    }
+                };
+            }
+        };
+        
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new BatchOperator(new Operator() {
+            @Override
+            public Pair execute(Pair pair) {
+                throw new IllegalStateException("stage failure");
+            }
+        })));
+        graph.addTask(new ProcessorTask(new IdentityFilter()));
+        
+        CollectingSubscriber sink = new CollectingSubscriber();
+        new StreamingEngine(graph).setChunkSize(16).setBufferSize(1).execute(source, sink);
+        
+        try {
+            sink.await();
+            fail("failure not propagated");
+        } catch (ExecutionException e) {
+            assertEquals("stage failure", e.getCause().getMessage());
+        }
+        assertTrue("source consumption stopped", consumed.get() < total);
+    }
+    
+    @Test
+    public void streamingEngineErrorStopsSourceTest() throws Exception {
+        final int total = 100000;
+        final AtomicInteger consumed = new AtomicInteger();
+        Iterable<Pair> source = new Iterable<Pair>() {
+            @Override
+            public Iterator<Pair> iterator() {
+                return new Iterator<Pair>() {
+                    @Override
+                    public boolean hasNext() {
+                        return consumed.get() < total;
+                    }
+                    
+                    @Override
+                    public Pair next() {
+                        return new PairImpl("base", "c" + consumed.getAndIncrement());
+                    }
+                };
+            }
+        };
+        
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new BatchOperator(new Operator() {
+            @Override
+            public Pair execute(Pair pair) {
+                throw new AssertionError("stage error");
+            }
+        })));
+        graph.addTask(new ProcessorTask(new IdentityFilter()));
+        
+        CollectingSubscriber sink = new CollectingSubscriber();
+        new StreamingEngine(graph).setChunkSize(16).setBufferSize(1).execute(source, sink);
+        
+        try {
+            sink.await();
+            fail("error not propagated");
+        } catch (ExecutionException e) {
+            assertEquals("error cause", AssertionError.class, e.getCause().getClass());
+        }
+        assertTrue("source consumption stopped", consumed.get() < total);
+    }
+    
+    @Test
+    public void compiledTaskTest() {
+        List<String> candidates = candidates(1000);
+        
+        for (Collection<Pair> input : Arrays.asList(Generator.generate("base", candidates), Generator.generateBatch("base", candidates))) {
+            List<Pair> result = assertSameOutput(compilerGraph(), TaskCompiler.compile(compilerGraph()), input);
+            
+            assertEquals("number of items", 989, result.size());
+        }
+    }
+    
+    @Test
+    public void compiledTaskStructureTest() {
+        SerialTask source = compilerGraph();
+        SerialTask compiled = (SerialTask) TaskCompiler.compile(source);
+        List<Task> tasks = new ArrayList<Task>(compiled.getTasks());
+        
+        assertEquals("number of tasks", 3, tasks.size());
+        assertEquals("unfused operator", BatchOperator.class, ((ProcessorTask) tasks.get(0)).getProcessor().getClass());
+        assertEquals("fused stages", 5, ((FusedProcessor) ((ProcessorTask) tasks.get(1)).getProcessor()).getStages().size());
+        
+        SerialTask match = (SerialTask) ((BranchingTask) tasks.get(2)).getTaskMatch();
+        assertEquals("fused branch", 1, match.getTasks().size());
+        assertEquals("source unchanged", 6, source.getTasks().size());
+    }
+    
+    private SerialTask pipelineGraph(boolean pipelined) {
+        SerialTask pipeline = new SerialTask().setPipelined(pipelined).setChunkSize(64);
+        pipeline.addTask(new ProcessorTask(new BatchOperator(new TestOperator())));
+        pipeline.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(3))));
+        pipeline.addTask(new ProcessorTask(new ThresholdFilter(900)));
+        pipeline.addTask(new ProcessorTask(new CountFilter(500)));
+        pipeline.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(-3))));
+        pipeline.addTask(new ProcessorTask(new ThresholdFilter(400)));
+        pipeline.addTask(new BranchingTask(new NullTask(), new NullTask(), new Inverter(new ThresholdFilter(200))));
+        return pipeline;
+    }
+    
+    private SerialTask streamingGraph() {
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new BatchOperator(new TestOperator())));
+        graph.addTask(new ProcessorTask(new ThresholdFilter(900)));
+        graph.addTask(new ProcessorTask(new CountFilter(500)));
+        graph.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(1))));
+        graph.addTask(new BranchingTask(new NullTask(), new NullTask(), new Inverter(new ThresholdFilter(250))));
+        return graph;
+    }
+    
+    private SerialTask compilerGraph() {
+        SerialTask nested = new SerialTask();
+        nested.addTask(new ProcessorTask(new IdentityFilter()));
+        nested.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(2))));
+        
+        SerialTask match = new SerialTask();
+        match.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(1))));
+        match.addTask(new ProcessorTask(new BatchEqualizer(new ExponentialEqualizer(100))));
+        
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new BatchOperator(new TestOperator())));
+        graph.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(-10))));
+        graph.addTask(new ProcessorTask(new ThresholdFilter(985)));
+        graph.addTask(nested);
+        graph.addTask(new ProcessorTask(new ThresholdFilter(980)));
+        graph.addTask(new BranchingTask(match, new NullTask(), new ThresholdFilter(0)));
+        return graph;
+    }
+    
+    @Test
+    public void optimizerPushDownTest() {
+        List<String> bases = names("b", 10);
+        List<String> candidates = candidates(100);
+        
+        TaskOptimizer optimizer = new TaskOptimizer().setCost(OffsetOperator.class, 100.0);
+        Task optimized = optimizer.optimize(optimizerGraph(true));
+        List<Task> tasks = new ArrayList<Task>(((SerialTask) optimized).getTasks());
+        
+        assertEquals("filter pushed down", KeyMatchFilter.class, ((ProcessorTask) tasks.get(1)).getProcessor().getClass());
+        assertEquals("identity removed", 4, tasks.size());
+        
+        SerialTask threadSafe = new SerialTask();
+        threadSafe.addTask(new ProcessorTask(new BatchOperator(new CountingOperator())));
+        threadSafe.addTask(new ProcessorTask(new KeyMatchFilter(new KeyExtractor() {
+            @Override
+            public Object extractKey(Object object) {
+                return object;
+            }
+        })));
+        List<Task> unmoved = new ArrayList<Task>(((SerialTask) optimizer.optimize(threadSafe)).getTasks());
+        assertEquals("thread-safe operator not reordered", BatchOperator.class, ((ProcessorTask) unmoved.get(0)).getProcessor().getClass());
+        
+        for (Collection<Pair> input : Arrays.asList(new ArrayList<Pair>(Generator.crossProduct(bases, candidates)), Generator.generateBatch(bases, candidates))) {
+            List<Pair> result = assertSameOutput(optimizerGraph(true), optimizer.optimize(optimizerGraph(true)), input);
+            
+            assertEquals("number of items", 100, result.size());
+        }
+    }
+    
+    @Test
+    public void optimizerFilterOrderTest() {
+        ThresholdFilter loose = new ThresholdFilter(100);
+        ThresholdFilter tight = new ThresholdFilter(10);
+        
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(loose));
+        graph.addTask(new ProcessorTask(tight));
+        
+        TaskOptimizer optimizer = new TaskOptimizer();
+        optimizer.observe(loose, 1000, 900);
+        optimizer.observe(tight, 900, 90);
+        
+        List<Task> tasks = new ArrayList<Task>(((SerialTask) optimizer.optimize(graph)).getTasks());
+        assertEquals("selective filter first", tight, ((ProcessorTask) tasks.get(0)).getProcessor());
+        assertEquals("observed selectivity", 0.1, optimizer.getSelectivity(tight), 0.0001);
+        assertTrue("explained", optimizer.explain(graph, 1000).contains("selectivity=0.10 (observed)"));
+    }
+    
+    @Test
+    public void optimizerGeneratorTest() {
+        List<String> bases = names("b", 100);
+        List<String> candidates = candidates(100);
+        
+        TaskOptimizer optimizer = new TaskOptimizer();
+        Task graph = optimizerGraph(false);
+        PairGenerator generator = optimizer.chooseGenerator(bases, candidates, graph);
+        
+        assertEquals("blocking chosen", BlockingGenerator.class, generator.getClass());
+        assertEquals("cross product without key filter", CrossProductGenerator.class, optimizer.chooseGenerator(bases, candidates, new NullTask()).getClass());
+        assertEquals("cross product behind stateful operator", CrossProductGenerator.class, optimizer.chooseGenerator(bases, candidates, optimizerGraph(true)).getClass());
+        
+        Collection<Pair> results = TaskUtils.runTask(optimizerGraph(false), Generator.generateBatch(bases, candidates));
+        Collection<Pair> blocked = TaskUtils.runTask(optimizer.optimize(graph), generator.generate(bases, candidates));
+        
+        assertEquals("blocked output", describe(results), describe(blocked));
+        assertTrue("explained", optimizer.explain(bases, candidates, graph).startsWith("generator: BlockingGenerator"));
+    }
+    
+    private SerialTask optimizerGraph(boolean stateful) {
+        SerialTask graph = new SerialTask();
+        if (stateful) {
+            graph.addTask(new ProcessorTask(new BatchOperator(new TestOperator())));
+        }
+        graph.addTask(new ProcessorTask(new BatchOperator(new OffsetOperator(5))));
+        graph.addTask(new ProcessorTask(new IdentityFilter()));
+        graph.addTask(new ProcessorTask(new ThresholdFilter(Integer.MAX_VALUE - 10)));
+        graph.addTask(new ProcessorTask(new KeyMatchFilter(new KeyExtractor() {
+            @Override
+            public Object extractKey(Object object) {
+                String value = (String) object;
+                return value.charAt(value.length() - 1);
+            }
+        })));
+        return graph;
+    }
+    
+    @Test
+    public void instrumentationTest() {
+        List<String> candidates = candidates(100);
+        
+        OffsetOperator operator = new OffsetOperator(1);
+        ProcessorTask filter = new ProcessorTask(new ThresholdFilter(10));
+        SerialTask graph = new SerialTask();
+        graph.addTask(new ProcessorTask(new BatchOperator(new TestOperator())));
+        graph.addTask(new ProcessorTask(new BatchOperator(operator)));
+        graph.addTask(filter);
+        
+        assertFalse("disabled", Instrumentation.isEnabled());
+        
+        MetricsRegistry registry = new MetricsRegistry();
+        Instrumentation.addListener(registry);
+        try {
+            TaskUtils.runTask(graph, Generator.generateBatch("base", candidates));
+        } finally {
+            Instrumentation.removeListener(registry);
+        }
+        
+        assertFalse("disabled after removal", Instrumentation.isEnabled());
+        assertEquals("graph runs", 1, registry.getStatistics(graph).getExecutions());
+        assertEquals("filter input", 100, registry.getStatistics(filter).getPairsIn());
+        assertEquals("filter output", 10, registry.getStatistics(filter).getPairsOut());
+        assertEquals("per-pair latencies", 100, registry.getStatistics(operator).getLatencies().getCount());
+        assertTrue("dump", registry.dump().contains("ProcessorTask[ThresholdFilter]"));
+        
+        TaskOptimizer optimizer = new TaskOptimizer();
+        optimizer.observe(registry);
+        assertEquals("observed selectivity", 0.1, optimizer.getSelectivity(filter.getProcessor()), 0.0001);
+        
+        TaskUtils.runTask(graph, Generator.generateBatch("base", candidates));
+        assertEquals("not recorded when disabled", 1, registry.getStatistics(graph).getExecutions());
+    }
+    
+    @Test
+    public void instrumentationAggregationTest() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("k1", "v1");
+        map.put("k2", "v2");
+        
+        MapKeyOperator entryOperator = new MapKeyOperator();
+        BatchOperator mapOperator = new BatchOperator(new MapOperator(entryOperator));
+        OffsetOperator operator = new OffsetOperator(1);
+        FusedProcessor fused = new FusedProcessor(Arrays.<Processor>asList(new BatchOperator(operator), new ThresholdFilter(10)));
+        
+        MetricsRegistry registry = new MetricsRegistry();
+        Instrumentation.addListener(registry);
+        try {
+            mapOperator.execute(Generator.generateBatch(map, Arrays.asList(map, map, map)));
+            fused.execute(Generator.generateBatch("base", candidates(100)));
+        } finally {
+            Instrumentation.removeListener(registry);
+        }
+        
+        assertEquals("entry comparisons per batch", 1, registry.getStatistics(entryOperator).getExecutions());
+        assertEquals("compared entry pairs", 12, registry.getStatistics(entryOperator).getPairsIn());
+        assertEquals("base entries", 6, registry.getStatistics(entryOperator).getPairsOut());
+        assertEquals("fused operator runs", 1, registry.getStatistics(operator).getExecutions());
+        assertEquals("fused operator input", 100, registry.getStatistics(operator).getPairsIn());
+        assertEquals("fused per-pair latencies", 100, registry.getStatistics(operator).getLatencies().getCount());
+    }
+    
+    @Test
+    public void latencyHistogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10);
+        }
+        
+        assertEquals("count", 100, histogram.getCount());
+        assertEquals("max", 1000, histogram.getMax());
+        assertEquals("median bucket", 511, histogram.getPercentile(0.5));
+        assertEquals("maximum", 1000, histogram.getPercentile(1.0));
+        
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(0);
+        histogram.merge(other);
+        assertEquals("merged", 101, histogram.getCount());
+        assertEquals("minimum", 1, histogram.getPercentile(0.0));
+    }
+    
+    private static List<String> candidates(int count) {
+        return names("c", count);
+    }
+    
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+    
+    private static List<Pair> assertSameOutput(Task expected, Task actual, Collection<Pair> input) {
+        List<Pair> expectedOutput = new ArrayList<Pair>(TaskUtils.runTask(expected, TaskUtils.copyData(input)));
+        List<Pair> actualOutput = new ArrayList<Pair>(TaskUtils.runTask(actual, TaskUtils.copyData(input)));
+        
+        assertEquals("same output", describe(expectedOutput), describe(actualOutput));
+        return expectedOutput;
+    }
+    
+    private static List<String> describe(Collection<Pair> pairs) {
+        List<String> descriptions = new ArrayList<String>(pairs.size());
+        for (Pair pair : pairs) {
+            descriptions.add(pair.getBase() + "/" + pair.getCandidate() + "=" + pair.getDifference());
+        }
+        return descriptions;
+    }
+    
     private void execTask(Task task) {
         task.push(this.input);
         task.execute();
@@ -259,4 +1006,47 @@ public class TaskTest {
         
     }
 
+    private static class CountingOperator implements Operator, ThreadSafe {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Pair execute(Pair pair) {
+            this.counter.incrementAndGet();
+            return pair;
+        }
+        
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<Collection<Pair>> {
+        private final CompletableFuture<List<Pair>> future = new CompletableFuture<List<Pair>>();
+        private final List<Pair> results = new ArrayList<Pair>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Collection<Pair> chunk) {
+            this.results.addAll(chunk);
+            this.subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.future.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.future.complete(this.results);
+        }
+
+        private List<Pair> await() throws Exception {
+            return this.future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
 }